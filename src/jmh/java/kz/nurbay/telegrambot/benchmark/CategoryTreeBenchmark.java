@@ -0,0 +1,99 @@
+package kz.nurbay.telegrambot.benchmark;
+
+import kz.nurbay.telegrambot.model.CategoryNode;
+import kz.nurbay.telegrambot.service.CategoryTree;
+import kz.nurbay.telegrambot.service.CategoryTreeRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rendering /viewTree pages and adding categories on synthetic trees.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CategoryTreeBenchmark {
+
+    /**
+     * The lines and characters of a page, as used by /viewTree.
+     */
+    private static final int PAGE_LINES = 50;
+    private static final int PAGE_CHARS = 4000;
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    @Param({"10"})
+    private int fanOut;
+
+    @Param({"10", "10000"})
+    private int maxDepth;
+
+    private CategoryTree tree;
+    private Long rootId;
+    private Long middleId;
+
+    @Setup
+    public void setUp() {
+        tree = SyntheticTrees.generate(size, fanOut, maxDepth);
+        rootId = tree.getRoot().id();
+        middleId = (long) tree.size() / 2;
+    }
+
+    @Benchmark
+    public String renderFirstPage() {
+        StringBuilder builder = new StringBuilder(PAGE_CHARS);
+        CategoryTreeRenderer.render(tree, rootId, PAGE_LINES, PAGE_CHARS, builder);
+        return builder.toString();
+    }
+
+    /**
+     * Renders a page from the middle of the tree, which first restores the position from the page's start.
+     */
+    @Benchmark
+    public String renderMiddlePage() {
+        StringBuilder builder = new StringBuilder(PAGE_CHARS);
+        CategoryTreeRenderer.render(tree, middleId, PAGE_LINES, PAGE_CHARS, builder);
+        return builder.toString();
+    }
+
+    /**
+     * Renders the whole tree page by page, i.e. the work of paging through it once without the page cache.
+     */
+    @Benchmark
+    public int renderAllPages() {
+        int chars = 0;
+        Long start = rootId;
+        StringBuilder builder = new StringBuilder(PAGE_CHARS);
+        while (start != null) {
+            builder.setLength(0);
+            start = CategoryTreeRenderer.render(tree, start, PAGE_LINES, PAGE_CHARS, builder);
+            chars += builder.length();
+        }
+        return chars;
+    }
+
+    /**
+     * Adds a category and checks the name of the next one, as a series of /addElement commands does.
+     */
+    @Benchmark
+    public CategoryNode addCategory() {
+        long id = tree.size() + 1L;
+        CategoryTree added = tree.withNode(new CategoryNode(id, middleId, "added"));
+        return added.findByName("added-" + id);
+    }
+}
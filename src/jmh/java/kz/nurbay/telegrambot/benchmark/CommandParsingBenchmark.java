@@ -0,0 +1,113 @@
+package kz.nurbay.telegrambot.benchmark;
+
+import kz.nurbay.telegrambot.bot.BotCommandHandler;
+import kz.nurbay.telegrambot.command.BotCommand;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.support.StaticApplicationContext;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how {@link BotCommandHandler#handleCommand(Update)} extracts the command name from a message
+ * and looks up its handler. The registered commands only consume the update, so the measurement covers
+ * the parsing, the lookup and recording the command timer, not the work of the commands.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandParsingBenchmark {
+
+    private static final List<String> COMMANDS = List.of(
+            "/start", "/help", "/viewTree", "/addElement", "/addElements", "/removeElement", "/download", "/upload");
+
+    /**
+     * The number of element lines following an /addElements command.
+     */
+    @Param({"0", "1000"})
+    private int lines;
+
+    private BotCommandHandler handler;
+    private Update viewTree;
+    private Update addElement;
+    private Update addElements;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        StaticApplicationContext context = new StaticApplicationContext();
+        for (String name : COMMANDS) {
+            context.getBeanFactory().registerSingleton(name, new ConsumingCommand(name, blackhole));
+        }
+        context.refresh();
+        handler = new BotCommandHandler(context, null, new SimpleMeterRegistry());
+
+        viewTree = update("/viewTree");
+        addElement = update("/addElement parent child");
+        StringBuilder text = new StringBuilder("/addElements");
+        for (int i = 0; i < lines; i++) {
+            text.append("\n  category-").append(i);
+        }
+        addElements = update(text.toString());
+    }
+
+    @Benchmark
+    public void commandWithoutArguments() throws TelegramApiException {
+        handler.handleCommand(viewTree);
+    }
+
+    @Benchmark
+    public void commandWithArguments() throws TelegramApiException {
+        handler.handleCommand(addElement);
+    }
+
+    @Benchmark
+    public void multilineCommand() throws TelegramApiException {
+        handler.handleCommand(addElements);
+    }
+
+    private static Update update(String text) {
+        Message message = new Message();
+        message.setFrom(new User(1L, "user", false));
+        message.setText(text);
+        Update update = new Update();
+        update.setMessage(message);
+        return update;
+    }
+
+    private record ConsumingCommand(String name, Blackhole blackhole) implements BotCommand {
+
+        @Override
+        public void execute(Update update) {
+            blackhole.consume(update);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package kz.nurbay.telegrambot.benchmark;
+
+import kz.nurbay.telegrambot.model.CategoryRow;
+import kz.nurbay.telegrambot.service.CategoryExcelExporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Excel export used by /download. The rows are written in the order the export query
+ * returns them to a discarding stream, so the measurement includes building the workbook and its
+ * temporary files but neither the query nor the final file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExcelExportBenchmark {
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    @Param({"10"})
+    private int fanOut;
+
+    @Param({"10"})
+    private int maxDepth;
+
+    private final CategoryExcelExporter exporter = new CategoryExcelExporter();
+    private List<CategoryRow> rows;
+
+    @Setup
+    public void setUp() {
+        rows = SyntheticTrees.rows(SyntheticTrees.generate(size, fanOut, maxDepth));
+    }
+
+    @Benchmark
+    public void export() throws IOException {
+        exporter.export(rows.stream(), OutputStream.nullOutputStream());
+    }
+}
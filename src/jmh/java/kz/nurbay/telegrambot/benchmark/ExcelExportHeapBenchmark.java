@@ -0,0 +1,107 @@
+package kz.nurbay.telegrambot.benchmark;
+
+import kz.nurbay.telegrambot.model.CategoryRow;
+import kz.nurbay.telegrambot.service.CategoryExcelExporter;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Measures the peak heap used by the Excel export for trees of growing size.
+ * The rows of each tree are generated up front, as the export query would stream them.
+ * Compares the streaming SXSSF export of {@link CategoryExcelExporter} with an in-memory XSSF export
+ * that returns the document as a byte array, as the export used to do.
+ * <p>
+ * Run with: {@code ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.main=kz.nurbay.telegrambot.benchmark.ExcelExportHeapBenchmark}
+ * <p>
+ * Arguments: comma-separated tree sizes (default {@code 1000,10000,100000,300000}).
+ */
+public class ExcelExportHeapBenchmark {
+
+    private static final int FAN_OUT = 8;
+
+    public static void main(String[] args) throws IOException {
+        String sizes = args.length > 0 ? args[0] : "1000,10000,100000,300000";
+        CategoryExcelExporter exporter = new CategoryExcelExporter();
+
+        // Warm up class loading, so that it is not attributed to the first measurement
+        List<CategoryRow> warmUp = SyntheticTrees.rows(SyntheticTrees.balanced(1000, FAN_OUT));
+        Files.delete(exporter.exportToTempFile(warmUp.stream()));
+        exportInMemory(warmUp);
+
+        System.out.printf("%10s %22s %22s%n", "nodes", "SXSSF to file (MB)", "XSSF to byte[] (MB)");
+        for (String size : sizes.split(",")) {
+            List<CategoryRow> rows = SyntheticTrees.rows(SyntheticTrees.balanced(Integer.parseInt(size.trim()), FAN_OUT));
+
+            long streaming = measurePeakHeap(() -> {
+                Path file = exporter.exportToTempFile(rows.stream());
+                Files.delete(file);
+            });
+            long inMemory = measurePeakHeap(() -> exportInMemory(rows));
+
+            System.out.printf("%10d %22.1f %22.1f%n", rows.size(), toMegabytes(streaming), toMegabytes(inMemory));
+        }
+    }
+
+    /**
+     * Runs the export and returns the peak heap usage above the usage before the run.
+     */
+    private static long measurePeakHeap(Export export) throws IOException {
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .toList();
+
+        System.gc();
+        long before = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            before += pool.getUsage().getUsed();
+            pool.resetPeakUsage();
+        }
+
+        export.run();
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return Math.max(0, peak - before);
+    }
+
+    /**
+     * The in-memory export the streaming export replaced: the whole workbook and two copies
+     * of the document are held on the heap.
+     */
+    private static ByteArrayInputStream exportInMemory(List<CategoryRow> rows) throws IOException {
+        try (Workbook workbook = new XSSFWorkbook()) {
+            Sheet sheet = workbook.createSheet("Categories");
+
+            int rowIdx = 0;
+            for (CategoryRow category : rows) {
+                sheet.createRow(rowIdx++).createCell(category.depth()).setCellValue(category.name());
+            }
+
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            workbook.write(outputStream);
+            return new ByteArrayInputStream(outputStream.toByteArray());
+        }
+    }
+
+    private static double toMegabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    @FunctionalInterface
+    private interface Export {
+        void run() throws IOException;
+    }
+}
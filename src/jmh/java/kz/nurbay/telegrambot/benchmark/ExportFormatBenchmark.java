@@ -0,0 +1,69 @@
+package kz.nurbay.telegrambot.benchmark;
+
+import kz.nurbay.telegrambot.model.CategoryRow;
+import kz.nurbay.telegrambot.service.CategoryCsvExporter;
+import kz.nurbay.telegrambot.service.CategoryExcelExporter;
+import kz.nurbay.telegrambot.service.CategoryExporter;
+import kz.nurbay.telegrambot.service.CategoryJsonExporter;
+import kz.nurbay.telegrambot.service.CategoryTextExporter;
+import kz.nurbay.telegrambot.service.ExportFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the /download formats. Every exporter writes the same rows, in the order the export query
+ * returns them, to a discarding stream; the GC profiler of the runner reports the allocation of each format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportFormatBenchmark {
+
+    @Param({"xlsx", "csv", "json", "txt"})
+    private String format;
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    @Param({"10"})
+    private int fanOut;
+
+    @Param({"10"})
+    private int maxDepth;
+
+    private CategoryExporter exporter;
+    private List<CategoryRow> rows;
+
+    @Setup
+    public void setUp() {
+        exporter = switch (ExportFormat.fromExtension(format)) {
+            case XLSX -> new CategoryExcelExporter();
+            case CSV -> new CategoryCsvExporter();
+            case JSON -> new CategoryJsonExporter();
+            case TXT -> new CategoryTextExporter();
+        };
+        rows = SyntheticTrees.rows(SyntheticTrees.generate(size, fanOut, maxDepth));
+    }
+
+    @Benchmark
+    public void export() throws IOException {
+        exporter.export(rows.stream(), OutputStream.nullOutputStream());
+    }
+}
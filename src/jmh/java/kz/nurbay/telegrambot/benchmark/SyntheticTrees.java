@@ -0,0 +1,88 @@
+package kz.nurbay.telegrambot.benchmark;
+
+import kz.nurbay.telegrambot.model.CategoryNode;
+import kz.nurbay.telegrambot.model.CategoryRow;
+import kz.nurbay.telegrambot.service.CategoryTree;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Builds synthetic category trees for the benchmarks, so they can run without a database.
+ */
+public final class SyntheticTrees {
+
+    private SyntheticTrees() {
+    }
+
+    /**
+     * Builds a tree in which every category has up to {@code fanOut} children, filled level by level.
+     *
+     * @param size   the total number of categories
+     * @param fanOut the maximum number of children of a category
+     * @return the category tree
+     */
+    public static CategoryTree balanced(int size, int fanOut) {
+        List<CategoryNode> nodes = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            Long parentId = id == 1 ? null : (id - 2) / fanOut + 1;
+            nodes.add(new CategoryNode(id, parentId, "category-" + id));
+        }
+        return CategoryTree.of(nodes);
+    }
+
+    /**
+     * Builds a tree depth-first: every category gets up to {@code fanOut} children, and no category is
+     * deeper than {@code maxDepth}. With a small fan-out and a large depth the tree consists of long chains.
+     * If the fan-out and the depth do not allow {@code size} categories, the tree is smaller.
+     *
+     * @param size     the maximum number of categories
+     * @param fanOut   the maximum number of children of a category
+     * @param maxDepth the maximum depth of a category, the root having depth 0
+     * @return the category tree
+     */
+    public static CategoryTree generate(int size, int fanOut, int maxDepth) {
+        List<CategoryNode> nodes = new ArrayList<>(size);
+        nodes.add(new CategoryNode(1L, null, "category-1"));
+
+        // Every entry holds the ID, the depth and the number of children created so far
+        Deque<long[]> stack = new ArrayDeque<>();
+        stack.push(new long[]{1, 0, 0});
+        while (nodes.size() < size && !stack.isEmpty()) {
+            long[] parent = stack.peek();
+            if (parent[1] == maxDepth || parent[2] == fanOut) {
+                stack.pop();
+                continue;
+            }
+
+            parent[2]++;
+            long id = nodes.size() + 1;
+            nodes.add(new CategoryNode(id, parent[0], "category-" + id));
+            stack.push(new long[]{id, parent[1] + 1, 0});
+        }
+        return CategoryTree.of(nodes);
+    }
+
+    /**
+     * Lists the categories of a tree as export rows in depth-first order, as the export query returns them.
+     *
+     * @param tree the category tree
+     * @return the names and depths of the categories, starting with the root
+     */
+    public static List<CategoryRow> rows(CategoryTree tree) {
+        List<CategoryRow> rows = new ArrayList<>(tree.size());
+        // Every entry holds the position of a category and its depth
+        Deque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{tree.rootIndex(), 0});
+        while (!stack.isEmpty()) {
+            int[] entry = stack.pop();
+            rows.add(new CategoryRow(tree.nameAt(entry[0]), entry[1]));
+            for (int position = tree.childCount(entry[0]) - 1; position >= 0; position--) {
+                stack.push(new int[]{tree.childAt(entry[0], position), entry[1] + 1});
+            }
+        }
+        return rows;
+    }
+}
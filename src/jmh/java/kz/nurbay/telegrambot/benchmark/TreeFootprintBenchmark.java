@@ -0,0 +1,102 @@
+package kz.nurbay.telegrambot.benchmark;
+
+import kz.nurbay.telegrambot.model.CategoryNode;
+import kz.nurbay.telegrambot.service.CategoryTree;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Measures the heap retained by a cached category tree for trees of growing size.
+ * Compares the primitive-array layout of {@link CategoryTree} with the object layout the tree used before:
+ * a node object per category, a map of child lists by parent ID and a map of nodes by name.
+ * <p>
+ * Run with: {@code ./mvnw -Pbenchmark test-compile exec:exec -Dbenchmark.main=kz.nurbay.telegrambot.benchmark.TreeFootprintBenchmark}
+ * <p>
+ * Arguments: comma-separated tree sizes (default {@code 10000,100000,1000000}).
+ */
+public class TreeFootprintBenchmark {
+
+    private static final int FAN_OUT = 8;
+
+    public static void main(String[] args) {
+        String sizes = args.length > 0 ? args[0] : "10000,100000,1000000";
+
+        System.out.printf("%10s %18s %18s %18s %18s%n",
+                "nodes", "compact (MB)", "objects (MB)", "compact (B/node)", "objects (B/node)");
+        for (String size : sizes.split(",")) {
+            int nodes = Integer.parseInt(size.trim());
+
+            long compact = measureRetainedHeap(() -> SyntheticTrees.balanced(nodes, FAN_OUT));
+            long objects = measureRetainedHeap(() -> new ObjectTree(nodes(nodes)));
+
+            System.out.printf("%10d %18.1f %18.1f %18d %18d%n", nodes, toMegabytes(compact), toMegabytes(objects),
+                    compact / nodes, objects / nodes);
+        }
+    }
+
+    /**
+     * Builds the structure and returns the heap it keeps reachable once built.
+     */
+    private static long measureRetainedHeap(Supplier<Object> build) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long before = memory.getHeapMemoryUsage().getUsed();
+
+        Object retained = build.get();
+
+        System.gc();
+        long after = memory.getHeapMemoryUsage().getUsed();
+        // Keeps the structure reachable until the heap has been measured
+        if (retained.hashCode() == 42) {
+            System.out.print("");
+        }
+        return Math.max(0, after - before);
+    }
+
+    /**
+     * The categories of {@link SyntheticTrees#balanced(int, int)} as node objects.
+     */
+    private static List<CategoryNode> nodes(int size) {
+        List<CategoryNode> nodes = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            Long parentId = id == 1 ? null : (id - 2) / FAN_OUT + 1;
+            nodes.add(new CategoryNode(id, parentId, "category-" + id));
+        }
+        return nodes;
+    }
+
+    /**
+     * The object layout of the tree before it was moved to primitive arrays.
+     */
+    private static final class ObjectTree {
+
+        private final List<CategoryNode> nodes;
+        private final Map<Long, List<CategoryNode>> childrenMap = new HashMap<>();
+        private final Map<String, CategoryNode> nameMap = new HashMap<>();
+
+        private ObjectTree(List<CategoryNode> nodes) {
+            this.nodes = nodes;
+            for (CategoryNode node : nodes) {
+                if (node.parentId() != null) {
+                    childrenMap.computeIfAbsent(node.parentId(), k -> new ArrayList<>()).add(node);
+                }
+                nameMap.putIfAbsent(node.name(), node);
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return nodes.size() + childrenMap.size() + nameMap.size();
+        }
+    }
+
+    private static double toMegabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+}
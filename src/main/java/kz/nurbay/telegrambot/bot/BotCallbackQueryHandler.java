@@ -0,0 +1,86 @@
+package kz.nurbay.telegrambot.bot;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import kz.nurbay.telegrambot.command.BotCallback;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Handles callback queries of inline keyboard buttons by mapping the prefix of the callback data
+ * to the corresponding {@link BotCallback} handler.
+ */
+@Component
+public class BotCallbackQueryHandler {
+    /**
+     * A map of callback data prefixes to their corresponding {@link BotCallback} implementations.
+     */
+    private final Map<String, BotCallback> callbackMap = new HashMap<>();
+    /**
+     * Responsible for answering callback queries that have no handler.
+     */
+    private final BotMessageSender botMessageSender;
+    private final MeterRegistry meterRegistry;
+
+    public BotCallbackQueryHandler(ApplicationContext applicationContext, BotMessageSender botMessageSender,
+                                   MeterRegistry meterRegistry) {
+        this.botMessageSender = botMessageSender;
+        this.meterRegistry = meterRegistry;
+
+        Map<String, BotCallback> beans = applicationContext.getBeansOfType(BotCallback.class);
+        for (BotCallback callback : beans.values()) {
+            callbackMap.put(callback.getCallbackPrefix(), callback);
+        }
+    }
+
+    /**
+     * Handles an incoming callback query by executing the corresponding {@link BotCallback} handler.
+     * A query without a handler, e.g. from a button of an older version of the bot, is answered
+     * so that the button stops loading.
+     *
+     * @param update the incoming update from Telegram containing the callback query
+     */
+    public void handleCallbackQuery(Update update) {
+        CallbackQuery callbackQuery = update.getCallbackQuery();
+        String data = callbackQuery.getData();
+        BotCallback callback = data != null ? callbackMap.get(data.split(":", 2)[0]) : null;
+
+        if (callback != null) {
+            execute(callback, update);
+        } else {
+            Long chatId = callbackQuery.getMessage() != null ? callbackQuery.getMessage().getChatId() : 0L;
+            botMessageSender.answerCallbackQuery(chatId, callbackQuery.getId(), null);
+        }
+    }
+
+    /**
+     * Executes the callback handler and records its latency in the {@code bot.callback} timer
+     * and its failures in the {@code bot.callback.errors} counter, both tagged with the callback prefix.
+     *
+     * @param callback the handler to execute
+     * @param update   the incoming update from Telegram containing the callback query
+     */
+    private void execute(BotCallback callback, Update update) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            callback.handleCallback(update);
+        } catch (RuntimeException e) {
+            outcome = "error";
+            meterRegistry.counter("bot.callback.errors",
+                    "callback", callback.getCallbackPrefix(), "exception", e.getClass().getSimpleName()).increment();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("bot.callback")
+                    .description("Latency of inline keyboard callbacks")
+                    .tags("callback", callback.getCallbackPrefix(), "outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package kz.nurbay.telegrambot.bot;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import kz.nurbay.telegrambot.command.BotCommand;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.util.HashMap;
@@ -24,9 +27,12 @@ public class BotCommandHandler {
      * Responsible for sending messages back to the user.
      */
     private final BotMessageSender botMessageSender;
+    private final MeterRegistry meterRegistry;
 
-    public BotCommandHandler(ApplicationContext applicationContext, BotMessageSender botMessageSender) {
+    public BotCommandHandler(ApplicationContext applicationContext, BotMessageSender botMessageSender,
+                             MeterRegistry meterRegistry) {
         this.botMessageSender = botMessageSender;
+        this.meterRegistry = meterRegistry;
 
         Map<String, BotCommand> beans = applicationContext.getBeansOfType(BotCommand.class);
         for (BotCommand command : beans.values()) {
@@ -42,16 +48,53 @@ public class BotCommandHandler {
      * @throws TelegramApiException if there is an issue sending a response to Telegram
      */
     public void handleCommand(Update update) throws TelegramApiException {
-        String messageText = update.getMessage().getText().split(" ")[0];
+        String messageText = getCommandText(update.getMessage()).split("\\s", 2)[0];
         BotCommand command = commandMap.get(messageText);
 
         if (command != null) {
-            command.execute(update);
+            execute(command, update);
         } else {
             handleUnknownCommand(update);
         }
     }
 
+    /**
+     * Executes the command and records its latency in the {@code bot.command} timer
+     * and its failures in the {@code bot.command.errors} counter, both tagged with the name of the command.
+     *
+     * @param command the command to execute
+     * @param update  the incoming update from Telegram containing the command
+     */
+    private void execute(BotCommand command, Update update) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            command.execute(update);
+        } catch (RuntimeException e) {
+            outcome = "error";
+            meterRegistry.counter("bot.command.errors",
+                    "command", command.getName(), "exception", e.getClass().getSimpleName()).increment();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("bot.command")
+                    .description("Latency of bot commands")
+                    .tags("command", command.getName(), "outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Returns the text of the message that contains the command.
+     * For a document, the command is taken from its caption.
+     *
+     * @param message the incoming message
+     * @return the text of the message, or null if the message has no text
+     */
+    static String getCommandText(Message message) {
+        return message.hasText() ? message.getText() : message.getCaption();
+    }
+
     /**
      * Handles unknown or unrecognized commands by sending a default response to the user.
      *
@@ -0,0 +1,40 @@
+package kz.nurbay.telegrambot.bot;
+
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.GetFile;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+
+import java.io.File;
+
+/**
+ * A service responsible for downloading files that users send to the bot.
+ */
+@Component
+public class BotFileDownloader {
+
+    /**
+     * The client used to interact with the Telegram API.
+     */
+    private final TelegramClient telegramClient;
+    private final TelegramApiMetrics apiMetrics;
+
+    public BotFileDownloader(TelegramClient telegramClient, TelegramApiMetrics apiMetrics) {
+        this.telegramClient = telegramClient;
+        this.apiMetrics = apiMetrics;
+    }
+
+    /**
+     * Downloads the file with the given ID to a temporary file.
+     * The caller is responsible for deleting the file once it is no longer needed.
+     *
+     * @param fileId the Telegram ID of the file
+     * @return the downloaded file
+     * @throws TelegramApiException if the file cannot be downloaded
+     */
+    public File download(String fileId) throws TelegramApiException {
+        org.telegram.telegrambots.meta.api.objects.File file =
+                apiMetrics.record(GetFile.PATH, () -> telegramClient.execute(new GetFile(fileId)));
+        return apiMetrics.record("downloadfile", () -> telegramClient.downloadFile(file));
+    }
+}
@@ -1,30 +1,30 @@
 package kz.nurbay.telegrambot.bot;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.meta.api.methods.send.SendDocument;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
-import org.telegram.telegrambots.meta.generics.TelegramClient;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A service responsible for sending messages to Telegram users.
+ * Messages are sent asynchronously through the {@link OutboundMessageScheduler},
+ * which keeps the bot within Telegram's rate limits.
  */
 @Component
 public class BotMessageSender {
 
-    private static final Logger log = LoggerFactory.getLogger(BotMessageSender.class);
-    /**
-     * The client used to interact with the Telegram API.
-     */
-    private final TelegramClient telegramClient;
+    private final OutboundMessageScheduler scheduler;
 
-    public BotMessageSender(TelegramClient telegramClient) {
-        this.telegramClient = telegramClient;
+    public BotMessageSender(OutboundMessageScheduler scheduler) {
+        this.scheduler = scheduler;
     }
 
     /**
@@ -34,44 +34,119 @@ public class BotMessageSender {
      * @param chatId       the ID of the chat to send the message to
      * @param text         the text content of the message
      * @param withMarkdown if true, the message will be sent with Markdown formatting
+     * @return a future completed with the sent message, or exceptionally if it could not be sent
      */
-    public void sendMessage(Long chatId, String text, boolean withMarkdown) {
+    public CompletableFuture<Message> sendMessage(Long chatId, String text, boolean withMarkdown) {
+        return scheduler.sendText(chatId, text, withMarkdown);
+    }
+
+    /**
+     * Sends a text message with an inline keyboard attached to it.
+     * Unlike plain texts, such messages are never merged with other messages.
+     *
+     * @param chatId       the ID of the chat to send the message to
+     * @param text         the text content of the message
+     * @param withMarkdown if true, the message will be sent with Markdown formatting
+     * @param keyboard     the inline keyboard to attach, or null to send the message without a keyboard
+     * @return a future completed with the sent message, or exceptionally if it could not be sent
+     */
+    public CompletableFuture<Message> sendMessage(Long chatId, String text, boolean withMarkdown,
+                                                  InlineKeyboardMarkup keyboard) {
+        if (keyboard == null) {
+            return sendMessage(chatId, text, withMarkdown);
+        }
+
         SendMessage message = SendMessage.builder()
                 .chatId(chatId)
                 .text(text)
+                .replyMarkup(keyboard)
                 .build();
 
         if (withMarkdown) {
             message.setParseMode("Markdown");
         }
 
-        try {
-            telegramClient.execute(message);
-        } catch (TelegramApiException e) {
-            log.error("Error sending message to chat {}: {}", chatId, e.getMessage());
+        return scheduler.submit(chatId, SendMessage.PATH, client -> client.execute(message));
+    }
+
+    /**
+     * Replaces the text and the inline keyboard of a message sent earlier by the bot.
+     *
+     * @param chatId       the ID of the chat the message belongs to
+     * @param messageId    the ID of the message to edit
+     * @param text         the new text of the message
+     * @param withMarkdown if true, the message will be formatted with Markdown
+     * @param keyboard     the new inline keyboard, or null to remove the keyboard
+     * @return a future completed once the message has been edited, or exceptionally if it could not be edited
+     */
+    public CompletableFuture<Serializable> editMessage(Long chatId, Integer messageId, String text,
+                                                       boolean withMarkdown, InlineKeyboardMarkup keyboard) {
+        EditMessageText message = EditMessageText.builder()
+                .chatId(chatId)
+                .messageId(messageId)
+                .text(text)
+                .replyMarkup(keyboard)
+                .build();
+
+        if (withMarkdown) {
+            message.setParseMode("Markdown");
         }
+
+        return scheduler.submit(chatId, EditMessageText.PATH, client -> client.execute(message));
+    }
+
+    /**
+     * Answers a callback query, which stops the loading indicator on the pressed button.
+     *
+     * @param chatId          the ID of the chat the button was pressed in
+     * @param callbackQueryId the ID of the callback query
+     * @param text            a notification shown to the user, or null to show nothing
+     * @return a future completed once the query has been answered
+     */
+    public CompletableFuture<Boolean> answerCallbackQuery(Long chatId, String callbackQueryId, String text) {
+        AnswerCallbackQuery answer = AnswerCallbackQuery.builder()
+                .callbackQueryId(callbackQueryId)
+                .text(text)
+                .build();
+
+        return scheduler.submit(chatId, AnswerCallbackQuery.PATH, client -> client.execute(answer));
     }
 
     /**
      * Sends a document to the specified chat.
+     * The document is uploaded straight from the file, without reading it into memory,
+     * so the file must not be deleted before the returned future completes.
      *
-     * @param chatId         the ID of the chat to send the document to
-     * @param fileName       the name of the document to be sent
-     * @param documentStream the input stream of the document content
+     * @param chatId   the ID of the chat to send the document to
+     * @param fileName the name of the document to be sent
+     * @param document the file with the document content
+     * @return a future completed with the sent message, or exceptionally if it could not be sent
      */
-    public void sendDocument(Long chatId, String fileName, ByteArrayInputStream documentStream) {
-        InputFile inputFile = new InputFile(documentStream, fileName);
+    public CompletableFuture<Message> sendDocument(Long chatId, String fileName, File document) {
+        InputFile inputFile = new InputFile(document, fileName);
 
         SendDocument sendDocument = SendDocument.builder()
                 .chatId(chatId)
                 .document(inputFile)
                 .build();
 
-        try {
-            telegramClient.execute(sendDocument);
-        } catch (TelegramApiException e) {
-            log.error("Error sending document to chat {}: {}", chatId, e.getMessage());
-        }
+        return scheduler.submit(chatId, SendDocument.PATH, client -> client.execute(sendDocument));
     }
-}
 
+    /**
+     * Sends a document that was sent before, by the file ID Telegram returned for it.
+     * Nothing is uploaded, Telegram sends its stored copy of the document.
+     *
+     * @param chatId the ID of the chat to send the document to
+     * @param fileId the file ID of the document
+     * @return a future completed with the sent message, or exceptionally if it could not be sent
+     */
+    public CompletableFuture<Message> sendDocument(Long chatId, String fileId) {
+        SendDocument sendDocument = SendDocument.builder()
+                .chatId(chatId)
+                .document(new InputFile(fileId))
+                .build();
+
+        return scheduler.submit(chatId, SendDocument.PATH, client -> client.execute(sendDocument));
+    }
+}
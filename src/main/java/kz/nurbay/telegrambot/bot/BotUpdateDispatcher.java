@@ -0,0 +1,140 @@
+package kz.nurbay.telegrambot.bot;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches incoming updates to the {@link BotUpdateHandler} concurrently on virtual threads.
+ * Updates of different users are processed in parallel, while updates of the same user are chained
+ * one after another, so that commands of a single user are always processed in the order they arrived
+ * and never race with each other.
+ */
+@Component
+public class BotUpdateDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(BotUpdateDispatcher.class);
+    /**
+     * The partition key used for updates that are not sent by a user (e.g. channel posts).
+     */
+    private static final Long NO_USER = 0L;
+
+    private final BotUpdateHandler updateHandler;
+    /**
+     * Limits the number of updates being processed at the same time across all users.
+     */
+    private final Semaphore permits;
+    private final ExecutorService executor;
+    /**
+     * The last scheduled update of each user. A new update of the user is chained after it.
+     * The entry is removed as soon as the user has no pending updates.
+     */
+    private final Map<Long, CompletableFuture<?>> userQueues = new ConcurrentHashMap<>();
+    /**
+     * The time from sending a message in Telegram until its processing starts.
+     */
+    private final Timer lagTimer;
+    /**
+     * The time from receiving an update until its processing starts, i.e. the wait behind
+     * earlier updates of the same user and for a concurrency permit.
+     */
+    private final Timer queueTimer;
+    private final Timer processingTimer;
+
+    public BotUpdateDispatcher(BotUpdateHandler updateHandler, MeterRegistry meterRegistry,
+                               ExecutorService commandExecutor,
+                               @Value("${telegram.bot.dispatcher.max-concurrency:64}") int maxConcurrency) {
+        this.updateHandler = updateHandler;
+        this.executor = commandExecutor;
+        this.permits = new Semaphore(maxConcurrency);
+        this.lagTimer = Timer.builder("telegram.updates.lag")
+                .description("Time from sending a message until the bot starts processing it")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.queueTimer = Timer.builder("telegram.updates.queued")
+                .description("Time from receiving an update until the bot starts processing it")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.processingTimer = Timer.builder("telegram.updates.processing")
+                .description("Time spent processing an update")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Schedules the update for processing after all previously dispatched updates of the same user.
+     *
+     * @param update the incoming update from Telegram
+     */
+    public void dispatch(Update update) {
+        Long userId = resolveUserId(update);
+        long receivedAt = System.nanoTime();
+        CompletableFuture<?> queued = userQueues.compute(userId, (key, previous) -> previous == null
+                ? CompletableFuture.runAsync(() -> process(update, receivedAt), executor)
+                : previous.handleAsync((result, error) -> {
+                    process(update, receivedAt);
+                    return null;
+                }, executor));
+        queued.whenComplete((result, error) -> userQueues.remove(userId, queued));
+    }
+
+    /**
+     * Processes a single update while holding one of the concurrency permits.
+     * Any failure is logged so that it does not break the chain of the following updates of the user.
+     *
+     * @param update     the update to process
+     * @param receivedAt the time the update was dispatched, in nanoseconds
+     */
+    private void process(Update update, long receivedAt) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        long start = System.nanoTime();
+        queueTimer.record(start - receivedAt, TimeUnit.NANOSECONDS);
+        if (update.hasMessage() && update.getMessage().getDate() != null) {
+            // Telegram reports the time of a message in seconds
+            long sentAt = TimeUnit.SECONDS.toMillis(update.getMessage().getDate());
+            lagTimer.record(Math.max(System.currentTimeMillis() - sentAt, 0), TimeUnit.MILLISECONDS);
+        }
+
+        try {
+            updateHandler.handleUpdate(update);
+        } catch (RuntimeException e) {
+            log.error("Error processing update {}: {}", update.getUpdateId(), e.getMessage(), e);
+        } finally {
+            processingTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            permits.release();
+        }
+    }
+
+    /**
+     * Resolves the ID of the user who sent the update, used to partition the updates and to route them to shards.
+     *
+     * @param update the incoming update from Telegram
+     * @return the ID of the sender, or {@link #NO_USER} if the update has no sender
+     */
+    static Long resolveUserId(Update update) {
+        if (update.hasMessage() && update.getMessage().getFrom() != null) {
+            return update.getMessage().getFrom().getId();
+        }
+        if (update.hasCallbackQuery()) {
+            return update.getCallbackQuery().getFrom().getId();
+        }
+        return NO_USER;
+    }
+}
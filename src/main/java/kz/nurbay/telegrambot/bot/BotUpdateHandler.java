@@ -21,25 +21,33 @@ public class BotUpdateHandler {
      * Handles invalid messages that are not commands.
      */
     private final BotInvalidMessageHandler invalidMessageHandler;
+    /**
+     * Handles presses of inline keyboard buttons.
+     */
+    private final BotCallbackQueryHandler callbackQueryHandler;
 
 
-    public BotUpdateHandler(BotCommandHandler commandHandler, BotInvalidMessageHandler botInvalidMessageHandler) {
+    public BotUpdateHandler(BotCommandHandler commandHandler, BotInvalidMessageHandler botInvalidMessageHandler,
+                            BotCallbackQueryHandler callbackQueryHandler) {
         this.commandHandler = commandHandler;
         this.invalidMessageHandler = botInvalidMessageHandler;
+        this.callbackQueryHandler = callbackQueryHandler;
     }
 
     /**
      * Processes incoming Telegram updates.
      * If the message starts with a slash ("/"), it is treated as a command and passed to the command handler.
+     * A document whose caption starts with a slash is treated as a command as well.
      * Otherwise, it is considered an invalid message and handled by the invalid message handler.
+     * Callback queries of inline keyboard buttons are passed to the callback query handler.
      *
      * @param update the incoming update from Telegram
      */
     public void handleUpdate(Update update) {
-        if (update.hasMessage() && update.getMessage().hasText()) {
-            String messageText = update.getMessage().getText();
+        if (update.hasMessage() && (update.getMessage().hasText() || update.getMessage().hasDocument())) {
+            String messageText = BotCommandHandler.getCommandText(update.getMessage());
 
-            if (messageText.startsWith("/")) {
+            if (messageText != null && messageText.startsWith("/")) {
                 try {
                     commandHandler.handleCommand(update);
                 } catch (TelegramApiException e) {
@@ -48,6 +56,8 @@ public class BotUpdateHandler {
             } else {
                 invalidMessageHandler.handleInvalidMessage(update);
             }
+        } else if (update.hasCallbackQuery()) {
+            callbackQueryHandler.handleCallbackQuery(update);
         }
     }
 }
@@ -0,0 +1,436 @@
+package kz.nurbay.telegrambot.bot;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends requests to the Telegram API within Telegram's rate limits.
+ * Requests are queued per chat and sent in order by one virtual thread per chat with pending requests.
+ * Each send, including each retry, takes a token from the chat's bucket and from the global bucket, and a request
+ * rejected with "429 Too Many Requests" is retried no earlier than the delay returned by Telegram.
+ * Text messages to the same chat that are queued at the same time are merged into one message.
+ */
+@Component
+public class OutboundMessageScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundMessageScheduler.class);
+    /**
+     * The maximum length of a text message accepted by Telegram.
+     */
+    static final int MAX_MESSAGE_LENGTH = 4096;
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    private final TelegramClient telegramClient;
+    private final TelegramApiMetrics apiMetrics;
+    private final TokenBucket globalBucket;
+    private final int chatRatePerSecond;
+    private final int chatBurst;
+    private final int groupRatePerMinute;
+    private final long mergeWindow;
+    private final int maxAttempts;
+
+    /**
+     * The queues of chats with pending requests. A queue is removed as soon as it is empty.
+     * All changes of a queue are made inside {@link Map#compute}, which serializes them per chat.
+     */
+    private final Map<Long, ChatQueue> chatQueues = new ConcurrentHashMap<>();
+    /**
+     * The buckets of chats whose queues were removed. A bucket is kept only until it would be full again,
+     * because forgetting a full bucket does not allow more requests than the limit.
+     */
+    private final Cache<Long, TokenBucket> idleChatBuckets = Caffeine.newBuilder()
+            .expireAfter(new UntilFull())
+            .build();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final Timer sendTimer;
+
+    public OutboundMessageScheduler(TelegramClient telegramClient, TelegramApiMetrics apiMetrics,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${telegram.outbound.global-rate-per-second:30}") int globalRatePerSecond,
+                                    @Value("${telegram.outbound.chat-rate-per-second:1}") int chatRatePerSecond,
+                                    @Value("${telegram.outbound.chat-burst:3}") int chatBurst,
+                                    @Value("${telegram.outbound.group-rate-per-minute:20}") int groupRatePerMinute,
+                                    @Value("${telegram.outbound.merge-window:50ms}") Duration mergeWindow,
+                                    @Value("${telegram.outbound.max-attempts:5}") int maxAttempts) {
+        this.telegramClient = telegramClient;
+        this.apiMetrics = apiMetrics;
+        this.globalBucket = new TokenBucket(globalRatePerSecond, globalRatePerSecond, SECOND, System.nanoTime());
+        this.chatRatePerSecond = chatRatePerSecond;
+        this.chatBurst = chatBurst;
+        this.groupRatePerMinute = groupRatePerMinute;
+        this.mergeWindow = mergeWindow.toNanos();
+        this.maxAttempts = maxAttempts;
+
+        meterRegistry.gauge("telegram.outbound.queue.depth", queueDepth);
+        this.sendTimer = Timer.builder("telegram.outbound.send")
+                .description("Time from queueing a request to Telegram until it was sent")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues a text message. If the previous queued message to the chat has not been sent yet and uses the
+     * same formatting, the text is appended to it, as long as the merged message fits into one Telegram message.
+     *
+     * @param chatId       the ID of the chat to send the message to
+     * @param text         the text of the message
+     * @param withMarkdown if true, the message is sent with Markdown formatting
+     * @return a future completed with the sent message (shared by all merged texts)
+     */
+    public CompletableFuture<Message> sendText(Long chatId, String text, boolean withMarkdown) {
+        CompletableFuture<Message> future = new CompletableFuture<>();
+        enqueue(chatId, queue -> {
+            Outbound last = queue.pending.peekLast();
+            if (last != null && last.canAppend(text, withMarkdown)) {
+                last.append(text, future);
+                return false;
+            }
+            queue.pending.addLast(Outbound.text(chatId, text, withMarkdown, future));
+            return true;
+        });
+        return future;
+    }
+
+    /**
+     * Queues an arbitrary request to the Telegram API, e.g. sending a document.
+     *
+     * @param chatId  the ID of the chat the request is sent to
+     * @param method  the name of the API method, used to tag the request metrics
+     * @param request the request to execute
+     * @param <T>     the type of the result of the request
+     * @return a future completed with the result of the request
+     */
+    public <T extends Serializable> CompletableFuture<T> submit(Long chatId, String method,
+                                                                TelegramRequest<T> request) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        enqueue(chatId, queue -> {
+            queue.pending.addLast(Outbound.request(chatId, method, request, future));
+            return true;
+        });
+        return future;
+    }
+
+    /**
+     * Returns the number of requests waiting to be sent.
+     *
+     * @return the number of queued requests
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Adds a request to the chat's queue and starts sending the queue if it is not being sent already.
+     */
+    private void enqueue(Long chatId, QueueUpdate update) {
+        boolean[] start = {false};
+        ChatQueue chatQueue = chatQueues.compute(chatId, (key, queue) -> {
+            if (queue == null) {
+                // A new queue is not drained yet, an existing one is drained until it is removed
+                TokenBucket bucket = idleChatBuckets.asMap().remove(chatId);
+                queue = new ChatQueue(chatId, bucket != null ? bucket : newChatBucket(chatId));
+                start[0] = true;
+            }
+            if (update.apply(queue)) {
+                queueDepth.incrementAndGet();
+            }
+            return queue;
+        });
+
+        if (start[0]) {
+            executor.execute(() -> drain(chatQueue));
+        }
+    }
+
+    private TokenBucket newChatBucket(Long chatId) {
+        // Group chats have negative IDs and a per-minute limit
+        return chatId < 0
+                ? new TokenBucket(groupRatePerMinute, groupRatePerMinute, MINUTE, System.nanoTime())
+                : new TokenBucket(chatBurst, chatRatePerSecond, SECOND, System.nanoTime());
+    }
+
+    /**
+     * Sends the queued requests of the chat one by one until the queue is empty.
+     * Waiting for the rate limits happens before a request is taken from the queue,
+     * so texts queued in the meantime are still merged into it.
+     * A request that fails unexpectedly fails only its own futures, the chat keeps being drained.
+     */
+    private void drain(ChatQueue chatQueue) {
+        try {
+            sleep(mergeWindow);
+            while (hasPending(chatQueue)) {
+                acquireTokens(chatQueue.bucket, System.nanoTime());
+                Outbound outbound = poll(chatQueue);
+                try {
+                    send(chatQueue.bucket, outbound);
+                } catch (RuntimeException e) {
+                    log.error("Error sending request to chat {}", outbound.chatId, e);
+                    outbound.fail(e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks if the chat has pending requests. If it has none, the chat stops being drained and its queue
+     * is dropped, keeping only its bucket until the bucket is full.
+     */
+    private boolean hasPending(ChatQueue chatQueue) {
+        boolean[] pending = {false};
+        chatQueues.compute(chatQueue.chatId, (key, queue) -> {
+            if (!chatQueue.pending.isEmpty()) {
+                pending[0] = true;
+                return chatQueue;
+            }
+            idleChatBuckets.put(chatQueue.chatId, chatQueue.bucket);
+            return null;
+        });
+        return pending[0];
+    }
+
+    /**
+     * Returns the number of chats this scheduler keeps state for, i.e. chats with pending requests
+     * and chats whose buckets still limit the next requests.
+     */
+    long getTrackedChatCount() {
+        idleChatBuckets.cleanUp();
+        return chatQueues.size() + idleChatBuckets.estimatedSize();
+    }
+
+    private Outbound poll(ChatQueue chatQueue) {
+        Outbound[] polled = new Outbound[1];
+        chatQueues.compute(chatQueue.chatId, (key, queue) -> {
+            polled[0] = chatQueue.pending.pollFirst();
+            return chatQueue;
+        });
+        queueDepth.decrementAndGet();
+        return polled[0];
+    }
+
+    /**
+     * Waits until both the chat's bucket and the global bucket have a token, but at least until the given time,
+     * and takes one token from each.
+     *
+     * @param notBefore the {@link System#nanoTime()} before which no token is taken
+     */
+    private void acquireTokens(TokenBucket chatBucket, long notBefore) throws InterruptedException {
+        while (true) {
+            long wait;
+            synchronized (globalBucket) {
+                long now = System.nanoTime();
+                wait = Math.max(notBefore - now,
+                        Math.max(chatBucket.nanosUntilAvailable(now), globalBucket.nanosUntilAvailable(now)));
+                if (wait <= 0) {
+                    chatBucket.take();
+                    globalBucket.take();
+                    return;
+                }
+            }
+            sleep(wait);
+        }
+    }
+
+    /**
+     * Sends the request, retrying it after "429 Too Many Requests" responses and after server or network errors.
+     * The tokens for the first attempt are already taken; each retry takes new ones once the delay has passed,
+     * so the delay and the rate limits overlap instead of adding up.
+     */
+    private void send(TokenBucket chatBucket, Outbound outbound) throws InterruptedException {
+        TelegramApiException lastError = null;
+        long retryAt = System.nanoTime();
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            if (attempt > 1) {
+                acquireTokens(chatBucket, retryAt);
+            }
+            try {
+                Serializable result = apiMetrics.record(outbound.method,
+                        () -> outbound.request.execute(telegramClient));
+                sendTimer.record(System.nanoTime() - outbound.queuedAt, TimeUnit.NANOSECONDS);
+                outbound.complete(result);
+                return;
+            } catch (TelegramApiRequestException e) {
+                lastError = e;
+                Integer errorCode = e.getErrorCode();
+                if (errorCode != null && errorCode == TOO_MANY_REQUESTS) {
+                    Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+                    retryAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(retryAfter != null ? retryAfter : 1);
+                } else if (errorCode != null && errorCode >= 500) {
+                    retryAt = System.nanoTime() + backoff(attempt);
+                } else {
+                    break;
+                }
+            } catch (TelegramApiException e) {
+                lastError = e;
+                retryAt = System.nanoTime() + backoff(attempt);
+            }
+        }
+
+        log.error("Error sending request to chat {}: {}", outbound.chatId, lastError.getMessage());
+        outbound.fail(lastError);
+    }
+
+    private long backoff(int attempt) {
+        return SECOND << Math.min(attempt - 1, 5);
+    }
+
+    private void sleep(long nanos) throws InterruptedException {
+        if (nanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.close();
+    }
+
+    /**
+     * A request to the Telegram API.
+     *
+     * @param <T> the type of the result of the request
+     */
+    @FunctionalInterface
+    public interface TelegramRequest<T extends Serializable> {
+        T execute(TelegramClient telegramClient) throws TelegramApiException;
+    }
+
+    @FunctionalInterface
+    private interface QueueUpdate {
+        /**
+         * Changes the queue and returns true if a new request was added to it.
+         */
+        boolean apply(ChatQueue queue);
+    }
+
+    /**
+     * The pending requests of one chat and the chat's rate limit.
+     */
+    private static final class ChatQueue {
+        private final Long chatId;
+        private final TokenBucket bucket;
+        private final Deque<Outbound> pending = new ArrayDeque<>();
+
+        private ChatQueue(Long chatId, TokenBucket bucket) {
+            this.chatId = chatId;
+            this.bucket = bucket;
+        }
+    }
+
+    /**
+     * Expires an idle chat's bucket once it has refilled completely.
+     */
+    private static final class UntilFull implements Expiry<Long, TokenBucket> {
+
+        @Override
+        public long expireAfterCreate(Long chatId, TokenBucket bucket, long currentTime) {
+            return bucket.nanosUntilFull(currentTime);
+        }
+
+        @Override
+        public long expireAfterUpdate(Long chatId, TokenBucket bucket, long currentTime, long currentDuration) {
+            return bucket.nanosUntilFull(currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Long chatId, TokenBucket bucket, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * A queued request. A text message can absorb texts queued after it until it is sent.
+     */
+    private static final class Outbound {
+        private final Long chatId;
+        private final long queuedAt = System.nanoTime();
+        private final List<CompletableFuture<?>> futures = new ArrayList<>();
+        private String method;
+        private TelegramRequest<?> request;
+        private StringBuilder text;
+        private boolean withMarkdown;
+
+        private Outbound(Long chatId) {
+            this.chatId = chatId;
+        }
+
+        static Outbound text(Long chatId, String text, boolean withMarkdown, CompletableFuture<Message> future) {
+            Outbound outbound = new Outbound(chatId);
+            outbound.text = new StringBuilder(text);
+            outbound.withMarkdown = withMarkdown;
+            outbound.futures.add(future);
+            outbound.method = SendMessage.PATH;
+            outbound.request = client -> {
+                SendMessage message = SendMessage.builder()
+                        .chatId(chatId)
+                        .text(outbound.text.toString())
+                        .build();
+                if (outbound.withMarkdown) {
+                    message.setParseMode("Markdown");
+                }
+                return client.execute(message);
+            };
+            return outbound;
+        }
+
+        static Outbound request(Long chatId, String method, TelegramRequest<?> request,
+                                CompletableFuture<?> future) {
+            Outbound outbound = new Outbound(chatId);
+            outbound.method = method;
+            outbound.request = request;
+            outbound.futures.add(future);
+            return outbound;
+        }
+
+        boolean canAppend(String other, boolean otherWithMarkdown) {
+            return text != null && withMarkdown == otherWithMarkdown
+                    && text.length() + 2 + other.length() <= MAX_MESSAGE_LENGTH;
+        }
+
+        void append(String other, CompletableFuture<Message> future) {
+            text.append("\n\n").append(other);
+            futures.add(future);
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete(Serializable result) {
+            // The result has the type of the request the futures were created for
+            futures.forEach(future -> ((CompletableFuture<Object>) future).complete(result));
+        }
+
+        void fail(Throwable error) {
+            futures.forEach(future -> future.completeExceptionally(error));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package kz.nurbay.telegrambot.bot;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the latency of calls to the Telegram API and counts failed calls by Telegram error code.
+ * <ul>
+ *     <li>{@code telegram.api.requests} - a timer tagged with the API method and the outcome of the call;</li>
+ *     <li>{@code telegram.api.errors} - a counter tagged with the API method and the error code,
+ *     or "network" if no response was received.</li>
+ * </ul>
+ */
+@Component
+public class TelegramApiMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    public TelegramApiMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Executes a call to the Telegram API and records its latency and failure.
+     *
+     * @param method the name of the API method, e.g. {@code SendMessage.PATH}
+     * @param call   the call to execute
+     * @param <T>    the type of the result of the call
+     * @return the result of the call
+     * @throws TelegramApiException if the call fails
+     */
+    public <T> T record(String method, TelegramCall<T> call) throws TelegramApiException {
+        long start = System.nanoTime();
+        String outcome = "success";
+        try {
+            return call.execute();
+        } catch (TelegramApiException e) {
+            outcome = "error";
+            meterRegistry.counter("telegram.api.errors", "method", method, "code", errorCode(e)).increment();
+            throw e;
+        } finally {
+            Timer.builder("telegram.api.requests")
+                    .description("Latency of calls to the Telegram API")
+                    .tags("method", method, "outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static String errorCode(TelegramApiException e) {
+        if (e instanceof TelegramApiRequestException requestException && requestException.getErrorCode() != null) {
+            return String.valueOf(requestException.getErrorCode());
+        }
+        return "network";
+    }
+
+    /**
+     * A call to the Telegram API.
+     *
+     * @param <T> the type of the result of the call
+     */
+    @FunctionalInterface
+    public interface TelegramCall<T> {
+        T execute() throws TelegramApiException;
+    }
+}
@@ -3,17 +3,24 @@ package kz.nurbay.telegrambot.bot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.longpolling.interfaces.LongPollingUpdateConsumer;
 import org.telegram.telegrambots.longpolling.starter.SpringLongPollingBot;
-import org.telegram.telegrambots.longpolling.util.LongPollingSingleThreadUpdateConsumer;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
+import java.util.List;
+
 /**
- * TelegramBot is the main bot class responsible for handling incoming Telegram updates.
+ * TelegramBot is the main bot class responsible for receiving incoming Telegram updates.
+ * Received updates are passed to the {@link BotUpdateDispatcher}, which processes them concurrently,
+ * or, when several instances run, forwarded by the {@link UpdateShardRouter} to the instance of their user.
+ * Only one instance may poll. The bot polls Telegram for updates unless it runs in webhook or forwarded mode,
+ * see {@link TelegramWebhookController}.
  */
 @Component
-public class TelegramBot implements SpringLongPollingBot, LongPollingSingleThreadUpdateConsumer {
+@ConditionalOnProperty(name = "telegram.bot.mode", havingValue = "long-polling", matchIfMissing = true)
+public class TelegramBot implements SpringLongPollingBot, LongPollingUpdateConsumer {
 
     private static final Logger log = LoggerFactory.getLogger(TelegramBot.class);
     /**
@@ -21,13 +28,13 @@ public class TelegramBot implements SpringLongPollingBot, LongPollingSingleThrea
      */
     private final String botToken;
     /**
-     * The handler responsible for processing incoming Telegram updates.
+     * The router that dispatches incoming Telegram updates locally or forwards them to their shard.
      */
-    private final BotUpdateHandler updateHandler;
+    private final UpdateShardRouter shardRouter;
 
-    public TelegramBot(@Value("${telegram.bot.token}") String botToken, BotUpdateHandler updateHandler) {
+    public TelegramBot(@Value("${telegram.bot.token}") String botToken, UpdateShardRouter shardRouter) {
         this.botToken = botToken;
-        this.updateHandler = updateHandler;
+        this.shardRouter = shardRouter;
     }
 
     @Override
@@ -41,8 +48,13 @@ public class TelegramBot implements SpringLongPollingBot, LongPollingSingleThrea
     }
 
     @Override
-    public void consume(Update update) {
-        updateHandler.handleUpdate(update);
+    public void consume(List<Update> updates) {
+        for (Update update : updates) {
+            // Polled updates are already confirmed to Telegram, so an update its shard did not accept is lost
+            if (!shardRouter.route(update)) {
+                log.error("Update {} was not delivered to its shard", update.getUpdateId());
+            }
+        }
     }
 }
 
@@ -0,0 +1,68 @@
+package kz.nurbay.telegrambot.bot;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+/**
+ * Receives updates pushed by Telegram when the bot runs in webhook mode ({@code telegram.bot.mode=webhook}),
+ * and updates forwarded by other instances of the bot in webhook or forwarded mode
+ * ({@code telegram.bot.mode=forwarded}, which does not register a webhook).
+ * Every request must carry the secret token the webhook was registered with. Updates are handed to the
+ * {@link UpdateShardRouter}, which dispatches them locally or forwards them to the instance of their user,
+ * and acknowledged right away, so Telegram does not wait for them to be processed.
+ */
+@RestController
+@ConditionalOnExpression("'${telegram.bot.mode:long-polling}' == 'webhook' or '${telegram.bot.mode:long-polling}' == 'forwarded'")
+public class TelegramWebhookController {
+
+    static final String SECRET_TOKEN_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final UpdateShardRouter shardRouter;
+    private final byte[] secretToken;
+
+    public TelegramWebhookController(UpdateShardRouter shardRouter,
+                                     @Value("${telegram.bot.webhook.secret-token:}") String secretToken) {
+        if (secretToken.isBlank()) {
+            throw new IllegalStateException("telegram.bot.webhook.secret-token must be set in webhook mode");
+        }
+        this.shardRouter = shardRouter;
+        this.secretToken = secretToken.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Accepts an update from Telegram.
+     *
+     * @param token         the secret token sent by Telegram in the {@value #SECRET_TOKEN_HEADER} header
+     * @param forwardedFrom the shard index of the instance that forwarded the update, or null if it comes from Telegram
+     * @param update        the update
+     * @return 200 once the update is queued for processing, 401 if the secret token does not match,
+     * or 503 if the update could not be forwarded to its shard, so that Telegram delivers it again
+     */
+    @PostMapping("${telegram.bot.webhook.path:/telegram/webhook}")
+    public ResponseEntity<Void> receiveUpdate(@RequestHeader(name = SECRET_TOKEN_HEADER, required = false) String token,
+                                              @RequestHeader(name = UpdateShardRouter.FORWARDED_FROM_HEADER,
+                                                      required = false) Integer forwardedFrom,
+                                              @RequestBody Update update) {
+        // Constant-time comparison, so the token cannot be guessed from response times
+        if (token == null || !MessageDigest.isEqual(secretToken, token.getBytes(StandardCharsets.UTF_8))) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+
+        if (forwardedFrom != null) {
+            shardRouter.acceptForwarded(update, forwardedFrom);
+        } else if (!shardRouter.route(update)) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok().build();
+    }
+}
@@ -0,0 +1,58 @@
+package kz.nurbay.telegrambot.bot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+
+/**
+ * Registers the webhook of the bot with Telegram once the application has started in webhook mode,
+ * so that Telegram pushes updates to the {@link TelegramWebhookController} instead of waiting to be polled.
+ */
+@Component
+@ConditionalOnProperty(name = "telegram.bot.mode", havingValue = "webhook")
+public class TelegramWebhookRegistrar {
+
+    private static final Logger log = LoggerFactory.getLogger(TelegramWebhookRegistrar.class);
+
+    private final TelegramClient telegramClient;
+    private final String url;
+    private final String secretToken;
+
+    public TelegramWebhookRegistrar(TelegramClient telegramClient,
+                                    @Value("${telegram.bot.webhook.url}") String baseUrl,
+                                    @Value("${telegram.bot.webhook.path:/telegram/webhook}") String path,
+                                    @Value("${telegram.bot.webhook.secret-token}") String secretToken) {
+        if (baseUrl.isBlank()) {
+            throw new IllegalStateException("telegram.bot.webhook.url must be set in webhook mode");
+        }
+        this.telegramClient = telegramClient;
+        this.url = baseUrl.replaceAll("/+$", "") + path;
+        this.secretToken = secretToken;
+    }
+
+    /**
+     * Sets the webhook to the public URL of the webhook endpoint.
+     * If Telegram rejects it, the error is logged and the bot receives no updates until the webhook is set.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void registerWebhook() {
+        SetWebhook setWebhook = SetWebhook.builder()
+                .url(url)
+                .secretToken(secretToken)
+                .build();
+
+        try {
+            telegramClient.execute(setWebhook);
+            log.info("Webhook set to {}", url);
+        } catch (TelegramApiException e) {
+            log.error("Error setting webhook to {}: {}", url, e.getMessage());
+        }
+    }
+}
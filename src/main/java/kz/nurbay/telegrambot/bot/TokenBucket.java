@@ -0,0 +1,62 @@
+package kz.nurbay.telegrambot.bot;
+
+/**
+ * A token bucket rate limiter.
+ * The bucket holds up to {@code capacity} tokens and is refilled continuously at a fixed rate.
+ * Each sent request takes one token, which allows short bursts while keeping the average rate.
+ */
+class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param capacity the maximum number of tokens, i.e. the largest allowed burst
+     * @param tokens   the number of tokens added per {@code period}
+     * @param period   the refill period in nanoseconds
+     * @param now      the current time in nanoseconds
+     */
+    TokenBucket(int capacity, int tokens, long period, long now) {
+        this.capacity = capacity;
+        this.tokensPerNano = (double) tokens / period;
+        this.tokens = capacity;
+        this.lastRefill = now;
+    }
+
+    /**
+     * Returns how long to wait until a token is available.
+     *
+     * @param now the current time in nanoseconds
+     * @return 0 if a token is available now, otherwise the waiting time in nanoseconds
+     */
+    synchronized long nanosUntilAvailable(long now) {
+        refill(now);
+        return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    /**
+     * Takes one token. Must be called only after {@link #nanosUntilAvailable(long)} returned 0.
+     */
+    synchronized void take() {
+        tokens -= 1;
+    }
+
+    /**
+     * Returns how long it takes until the bucket is full, after which forgetting it would not allow
+     * more requests than the limit.
+     *
+     * @param now the current time in nanoseconds
+     * @return 0 if the bucket holds the maximum number of tokens, otherwise the time in nanoseconds
+     */
+    synchronized long nanosUntilFull(long now) {
+        refill(now);
+        return tokens >= capacity ? 0 : (long) Math.ceil((capacity - tokens) / tokensPerNano);
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
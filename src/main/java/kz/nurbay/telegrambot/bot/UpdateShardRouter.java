@@ -0,0 +1,156 @@
+package kz.nurbay.telegrambot.bot;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Routes incoming updates between the instances of the bot when several of them run side by side.
+ * Every user belongs to exactly one instance, the shard selected by the hash of the user ID, and all updates
+ * of the user are processed there. This keeps the updates of a user in order and the per-user caches
+ * of an instance the only copies in use. An update received by another instance, e.g. from a load balancer
+ * in front of the webhook, is forwarded to the webhook endpoint of its shard.
+ * With a single shard (the default) every update is dispatched locally.
+ */
+@Component
+public class UpdateShardRouter {
+
+    /**
+     * The header that marks an update forwarded by another instance, holding the shard index of the sender.
+     * A forwarded update is always dispatched locally, so instances with different shard settings
+     * cannot forward an update back and forth.
+     */
+    static final String FORWARDED_FROM_HEADER = "X-Bot-Forwarded-From-Shard";
+    private static final Logger log = LoggerFactory.getLogger(UpdateShardRouter.class);
+    private static final Duration FORWARD_TIMEOUT = Duration.ofSeconds(10);
+
+    private final BotUpdateDispatcher updateDispatcher;
+    private final ObjectMapper objectMapper;
+    private final int shardCount;
+    private final int shardIndex;
+    /**
+     * The webhook endpoints of all shards, in shard index order.
+     */
+    private final List<URI> shardEndpoints;
+    private final String secretToken;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(FORWARD_TIMEOUT)
+            .build();
+
+    public UpdateShardRouter(BotUpdateDispatcher updateDispatcher, ObjectMapper objectMapper,
+                             @Value("${telegram.bot.shard.count:1}") int shardCount,
+                             @Value("${telegram.bot.shard.index:0}") int shardIndex,
+                             @Value("${telegram.bot.shard.urls:}") List<String> shardUrls,
+                             @Value("${telegram.bot.webhook.path:/telegram/webhook}") String path,
+                             @Value("${telegram.bot.webhook.secret-token:}") String secretToken) {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalStateException("telegram.bot.shard.index must be between 0 and telegram.bot.shard.count - 1");
+        }
+        if (shardCount > 1 && shardUrls.size() != shardCount) {
+            throw new IllegalStateException("telegram.bot.shard.urls must list the URL of every shard");
+        }
+        if (shardCount > 1 && secretToken.isBlank()) {
+            throw new IllegalStateException("telegram.bot.webhook.secret-token must be set to forward updates");
+        }
+        this.updateDispatcher = updateDispatcher;
+        this.objectMapper = objectMapper;
+        this.shardCount = shardCount;
+        this.shardIndex = shardIndex;
+        this.shardEndpoints = shardUrls.stream()
+                .map(url -> URI.create(url.strip().replaceAll("/+$", "") + path))
+                .toList();
+        this.secretToken = secretToken;
+    }
+
+    /**
+     * Returns the shard the user belongs to.
+     * The shard depends only on the user ID and the number of shards, so all instances agree on it.
+     *
+     * @param userId the ID of the user
+     * @return the index of the shard, from 0 to the number of shards - 1
+     */
+    public int shardOf(Long userId) {
+        return Math.floorMod(Long.hashCode(userId), shardCount);
+    }
+
+    /**
+     * Dispatches the update locally if its user belongs to this instance, or forwards it to the user's shard.
+     * The update is forwarded synchronously, so that a failure can be reported back to Telegram,
+     * which then delivers the update again.
+     *
+     * @param update the incoming update from Telegram
+     * @return true if the update was dispatched or accepted by its shard, false if it could not be forwarded
+     */
+    public boolean route(Update update) {
+        int shard = shardOf(BotUpdateDispatcher.resolveUserId(update));
+        if (shard == shardIndex) {
+            updateDispatcher.dispatch(update);
+            return true;
+        }
+        return forward(update, shard);
+    }
+
+    /**
+     * Dispatches an update forwarded by another instance.
+     *
+     * @param update    the forwarded update
+     * @param fromShard the shard index of the instance that forwarded the update
+     */
+    public void acceptForwarded(Update update, int fromShard) {
+        int shard = shardOf(BotUpdateDispatcher.resolveUserId(update));
+        if (shard != shardIndex) {
+            log.warn("Update {} forwarded by shard {} belongs to shard {}, not to shard {}; check the shard settings",
+                    update.getUpdateId(), fromShard, shard, shardIndex);
+        }
+        updateDispatcher.dispatch(update);
+    }
+
+    /**
+     * Posts the update to the webhook endpoint of the given shard.
+     *
+     * @param update the update to forward
+     * @param shard  the index of the shard
+     * @return true if the shard accepted the update, false otherwise
+     */
+    private boolean forward(Update update, int shard) {
+        URI endpoint = shardEndpoints.get(shard);
+        try {
+            HttpRequest request = HttpRequest.newBuilder(endpoint)
+                    .timeout(FORWARD_TIMEOUT)
+                    .header("Content-Type", "application/json")
+                    .header(TelegramWebhookController.SECRET_TOKEN_HEADER, secretToken)
+                    .header(FORWARDED_FROM_HEADER, Integer.toString(shardIndex))
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(update)))
+                    .build();
+
+            int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (status != 200) {
+                log.error("Shard {} at {} rejected update {} with status {}", shard, endpoint, update.getUpdateId(), status);
+                return false;
+            }
+            return true;
+        } catch (JsonProcessingException e) {
+            log.error("Error serializing update {}: {}", update.getUpdateId(), e.getMessage());
+            return false;
+        } catch (IOException e) {
+            log.error("Error forwarding update {} to shard {} at {}: {}",
+                    update.getUpdateId(), shard, endpoint, e.getMessage());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
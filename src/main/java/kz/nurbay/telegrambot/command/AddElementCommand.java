@@ -59,19 +59,23 @@ public class AddElementCommand implements BotCommand {
         String elementName = parts.length == 3 ? parts[2] : parts[1];
         String response;
 
-        if (parentElementName == null) {
-            boolean rootExists = categoryService.rootElementExists(userId);
-            if (rootExists) {
-                response = "Корневой элемент уже существует.";
-            } else {
-                categoryService.addRootElement(userId, elementName);
+        if (categoryService.elementExists(userId, elementName)) {
+            response = "Элемент \"" + elementName + "\" уже существует.";
+        } else if (parentElementName == null) {
+            boolean added = categoryService.addRootElement(userId, elementName);
+            if (added) {
                 response = "Элемент \"" + elementName + "\" добавлен как корневой элемент.";
+            } else {
+                response = "Корневой элемент уже существует.";
             }
         } else {
-            boolean parentExists = categoryService.addChildElement(userId, parentElementName, elementName);
-            if (parentExists) {
+            boolean added = categoryService.addChildElement(userId, parentElementName, elementName);
+            if (added) {
                 response = "Элемент \"" + elementName + "\" " +
                         "добавлен к родительскому элементу \"" + parentElementName + "\".";
+            } else if (categoryService.elementExists(userId, elementName)) {
+                // Added concurrently since the check above
+                response = "Элемент \"" + elementName + "\" уже существует.";
             } else {
                 response = "Родительский элемент \"" + parentElementName + "\" не найден.";
             }
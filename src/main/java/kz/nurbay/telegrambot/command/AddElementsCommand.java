@@ -0,0 +1,157 @@
+package kz.nurbay.telegrambot.command;
+
+import kz.nurbay.telegrambot.bot.BotMessageSender;
+import kz.nurbay.telegrambot.service.CategoryDraft;
+import kz.nurbay.telegrambot.service.CategoryService;
+import kz.nurbay.telegrambot.service.CategoryTree;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Handles the /addElements command, which adds many categories to the tree with a single message.
+ * Every line after the command describes one element:
+ * - an indented line adds an element as a child of the nearest less indented line above it;
+ * - a line with two names "<parent> <element>" adds an element to the specified parent element;
+ * - a line with a single name that is not indented refers to an existing element,
+ * or adds the root element if the tree is empty.
+ */
+@Component
+public class AddElementsCommand implements BotCommand {
+
+    private final CategoryService categoryService;
+    private final BotMessageSender botMessageSender;
+
+    public AddElementsCommand(CategoryService categoryService, BotMessageSender botMessageSender) {
+        this.categoryService = categoryService;
+        this.botMessageSender = botMessageSender;
+    }
+
+    /**
+     * Executes the /addElements command.
+     * Parses all lines of the message, validates them against the user's tree and adds all elements at once.
+     * If any line is invalid, nothing is added and the user is told which line is wrong.
+     *
+     * @param update the incoming update from Telegram containing the command and the elements
+     */
+    @Override
+    public void execute(Update update) {
+        Long chatId = update.getMessage().getChatId();
+        Long userId = update.getMessage().getFrom().getId();
+        String text = update.getMessage().getText();
+
+        String[] lines = text.substring(getName().length()).split("\n");
+        CategoryTree tree = categoryService.getCategoryTree(userId);
+
+        List<CategoryDraft> drafts = new ArrayList<>();
+        String error = parse(lines, tree, drafts);
+
+        String response;
+        if (error != null) {
+            response = error;
+        } else if (drafts.isEmpty()) {
+            response = "Пожалуйста, укажите элементы, каждый с новой строки. Пример:\n" +
+                    "/addElements\nродитель\n  элемент\n    дочерний";
+        } else if (categoryService.addElements(userId, drafts)) {
+            response = "Добавлено элементов: " + drafts.size() + ".";
+        } else {
+            // The lines were checked against the tree, which has been modified since
+            response = "Не удалось добавить элементы: дерево было изменено. Повторите команду.";
+        }
+
+        botMessageSender.sendMessage(chatId, response, false);
+    }
+
+    /**
+     * Parses the lines of the message into the list of elements to add.
+     *
+     * @param lines  the lines of the message following the command
+     * @param tree   the current category tree of the user
+     * @param drafts the list the parsed elements are added to, parents before their children
+     * @return a message describing the first invalid line, or null if all lines are valid
+     */
+    private String parse(String[] lines, CategoryTree tree, List<CategoryDraft> drafts) {
+        Deque<Integer> indents = new ArrayDeque<>();
+        Deque<String> parents = new ArrayDeque<>();
+        Set<String> names = new HashSet<>();
+        boolean rootExists = tree.getRoot() != null;
+
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].stripTrailing();
+            if (line.isBlank()) {
+                continue;
+            }
+
+            int indent = indentOf(line);
+            while (!indents.isEmpty() && indents.peek() >= indent) {
+                indents.pop();
+                parents.pop();
+            }
+
+            String[] parts = line.trim().split("\\s+");
+            String lineNumber = "Строка " + (i + 1) + ": ";
+            if (parts.length > 2 || (parts.length == 2 && !parents.isEmpty())) {
+                return lineNumber + "укажите один элемент или пару <родитель> <элемент>.";
+            }
+
+            String parentName = parts.length == 2 ? parts[0] : parents.peek();
+            String elementName = parts.length == 2 ? parts[1] : parts[0];
+
+            if (parentName == null && tree.findByName(elementName) != null) {
+                // An existing element, which the following indented lines are added to
+                indents.push(indent);
+                parents.push(elementName);
+                continue;
+            }
+
+            if (tree.findByName(elementName) != null || !names.add(elementName)) {
+                return lineNumber + "элемент \"" + elementName + "\" уже существует.";
+            }
+            if (parentName == null) {
+                if (rootExists) {
+                    return lineNumber + "элемент \"" + elementName + "\" не найден, а корневой элемент уже существует.";
+                }
+                rootExists = true;
+            } else if (tree.findByName(parentName) == null && !names.contains(parentName)) {
+                return lineNumber + "родительский элемент \"" + parentName + "\" не найден.";
+            }
+
+            drafts.add(new CategoryDraft(parentName, elementName));
+            indents.push(indent);
+            parents.push(elementName);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the indentation width of the line, counting a tab as four spaces.
+     *
+     * @param line the line of the message
+     * @return the indentation width
+     */
+    private int indentOf(String line) {
+        int indent = 0;
+        for (int i = 0; i < line.length() && Character.isWhitespace(line.charAt(i)); i++) {
+            indent += line.charAt(i) == '\t' ? 4 : 1;
+        }
+        return indent;
+    }
+
+    @Override
+    public String getName() {
+        return "/addElements";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Добавляет несколько элементов одним сообщением, каждый с новой строки. " +
+                "Вложенность задается отступами или парами <родитель> <элемент>." +
+                "\nПример:\n/addElements\nродитель\n  элемент\n    дочерний";
+    }
+}
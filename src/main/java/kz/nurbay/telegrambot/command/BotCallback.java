@@ -0,0 +1,25 @@
+package kz.nurbay.telegrambot.command;
+
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Represents a handler of callback queries sent when a user presses an inline keyboard button of the bot.
+ * The callback data of a button has the form "prefix:arguments", where the prefix selects the handler.
+ */
+public interface BotCallback {
+
+    /**
+     * Handles the callback query contained in the provided Telegram update.
+     * The handler is responsible for answering the callback query.
+     *
+     * @param update the incoming update from Telegram that contains the callback query
+     */
+    void handleCallback(Update update);
+
+    /**
+     * Returns the unique prefix of the callback data handled by this handler (e.g., "tree").
+     *
+     * @return the prefix of the callback data
+     */
+    String getCallbackPrefix();
+}
@@ -1,33 +1,52 @@
 package kz.nurbay.telegrambot.command;
 
 import kz.nurbay.telegrambot.bot.BotMessageSender;
-import kz.nurbay.telegrambot.model.Category;
 import kz.nurbay.telegrambot.service.CategoryService;
+import kz.nurbay.telegrambot.service.ExportFormat;
+import kz.nurbay.telegrambot.service.SentDocumentCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.api.objects.Update;
 
-import java.io.ByteArrayInputStream;
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 
 /**
- * Handles the /download command, which allows users to download their category tree as an Excel document.
+ * Handles the /download command, which allows users to download their category tree as an Excel document
+ * or in one of the other {@link ExportFormat}s.
  */
 @Component
 public class DownloadCommand implements BotCommand {
 
+    private static final Logger log = LoggerFactory.getLogger(DownloadCommand.class);
+    private static final String FORMATS = Arrays.stream(ExportFormat.values())
+            .map(ExportFormat::getExtension)
+            .collect(Collectors.joining(", "));
     private final CategoryService categoryService;
     private final BotMessageSender botMessageSender;
+    private final SentDocumentCache sentDocumentCache;
+    private final Executor commandExecutor;
 
-    public DownloadCommand(CategoryService categoryService, BotMessageSender botMessageSender) {
+    public DownloadCommand(CategoryService categoryService, BotMessageSender botMessageSender,
+                           SentDocumentCache sentDocumentCache, Executor commandExecutor) {
         this.categoryService = categoryService;
         this.botMessageSender = botMessageSender;
+        this.sentDocumentCache = sentDocumentCache;
+        this.commandExecutor = commandExecutor;
     }
 
     /**
      * Executes the /download command.
-     * Retrieves all categories for the user and generates an Excel file with the category tree.
+     * Generates a file with the category tree of the user in the requested format, Excel by default.
      * If categories are found, the file is sent to the user. Otherwise, a message is sent informing the user
      * that there is no category tree.
+     * If the tree has not changed since the file was last sent in the same format, the sent file is sent again
+     * by its Telegram file ID, without generating and uploading it.
      *
      * @param update the incoming update from Telegram containing the command
      */
@@ -35,18 +54,71 @@ public class DownloadCommand implements BotCommand {
     public void execute(Update update) {
         Long userId = update.getMessage().getFrom().getId();
         Long chatId = update.getMessage().getChatId();
+        String[] parts = update.getMessage().getText().trim().split("\\s+");
 
-        List<Category> categories = categoryService.getAllCategoriesByUserId(userId);
+        ExportFormat format = parts.length > 1 ? ExportFormat.fromExtension(parts[1]) : ExportFormat.XLSX;
+        if (parts.length > 2 || format == null) {
+            botMessageSender.sendMessage(chatId,
+                    "Неизвестный формат. Доступные форматы: " + FORMATS + ". Пример: /download csv", false);
+            return;
+        }
 
-        if (!categories.isEmpty()) {
-            ByteArrayInputStream excelFile = categoryService.createExcelFileWithCategories(categories);
-            if (excelFile != null) {
-                botMessageSender.sendDocument(chatId, "categories.xlsx", excelFile);
-            } else {
-                botMessageSender.sendMessage(chatId, "Не удалось создать файл.", false);
-            }
-        } else {
+        if (!categoryService.rootElementExists(userId)) {
             botMessageSender.sendMessage(chatId, "У вас нет дерева", false);
+            return;
+        }
+
+        // Read before generating, so that a file generated during a modification is not remembered as current
+        long version = categoryService.getTreeVersion(userId);
+        String fileId = sentDocumentCache.getFileId(userId, format, version);
+        if (fileId != null) {
+            // The future completes on the thread sending the chat's requests, so the new file is generated elsewhere
+            botMessageSender.sendDocument(chatId, fileId).whenCompleteAsync((message, error) -> {
+                if (error != null) {
+                    log.error("Error resending file {} for user {}: {}", fileId, userId, error.getMessage());
+                    sentDocumentCache.invalidate(userId, format);
+                    sendNewFile(userId, chatId, format, version);
+                }
+            }, commandExecutor);
+        } else {
+            sendNewFile(userId, chatId, format, version);
+        }
+    }
+
+    /**
+     * Generates the file with the category tree, sends it and remembers the file ID Telegram returned for it.
+     *
+     * @param userId  the ID of the user
+     * @param chatId  the ID of the chat to send the file to
+     * @param format  the format of the file
+     * @param version the version of the tree read before the file is generated
+     */
+    private void sendNewFile(Long userId, Long chatId, ExportFormat format, long version) {
+        Path file = categoryService.createExportFile(userId, format);
+        if (file == null) {
+            botMessageSender.sendMessage(chatId, "Не удалось создать файл.", false);
+            return;
+        }
+
+        botMessageSender.sendDocument(chatId, "categories." + format.getExtension(), file.toFile())
+                .whenComplete((message, error) -> {
+                    deleteFile(file);
+                    if (message != null && message.getDocument() != null) {
+                        sentDocumentCache.put(userId, format, version, message.getDocument().getFileId());
+                    }
+                });
+    }
+
+    /**
+     * Deletes the temporary file once it has been sent.
+     *
+     * @param file the file to delete
+     */
+    private void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.error("Error deleting file {}: {}", file, e.getMessage());
         }
     }
 
@@ -57,6 +129,7 @@ public class DownloadCommand implements BotCommand {
 
     @Override
     public String getDescription() {
-        return "Скачивает Excel документ с деревом категорий.";
+        return "Скачивает дерево категорий в Excel документе или в другом формате. " +
+                "\nПример: /download или /download <формат>, где формат: " + FORMATS + ".";
     }
 }
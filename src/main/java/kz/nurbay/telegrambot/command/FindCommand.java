@@ -0,0 +1,81 @@
+package kz.nurbay.telegrambot.command;
+
+import kz.nurbay.telegrambot.bot.BotMessageSender;
+import kz.nurbay.telegrambot.model.CategoryMatch;
+import kz.nurbay.telegrambot.service.CategoryService;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.List;
+
+/**
+ * Handles the /find command, which allows users to find categories by a part of their name
+ * without viewing the whole tree. Every found category is shown with the path from the root to it.
+ */
+@Component
+public class FindCommand implements BotCommand {
+
+    /**
+     * The maximum length of a shown path, which keeps the message within Telegram's limit for deep trees.
+     */
+    private static final int MAX_PATH_LENGTH = 180;
+    private final CategoryService categoryService;
+    private final BotMessageSender botMessageSender;
+
+    public FindCommand(CategoryService categoryService, BotMessageSender botMessageSender) {
+        this.categoryService = categoryService;
+        this.botMessageSender = botMessageSender;
+    }
+
+    /**
+     * Executes the /find command.
+     * Searches the user's categories for the given text and sends the found categories with their paths.
+     * If nothing is found, an appropriate message is sent to the user.
+     *
+     * @param update the incoming update from Telegram containing the command
+     */
+    @Override
+    public void execute(Update update) {
+        Long userId = update.getMessage().getFrom().getId();
+        Long chatId = update.getMessage().getChatId();
+        String[] parts = update.getMessage().getText().split(" ", 2);
+
+        if (parts.length != 2 || parts[1].isBlank()) {
+            botMessageSender.sendMessage(chatId, "Пожалуйста, укажите текст для поиска. Пример: /find элемент", false);
+            return;
+        }
+
+        String text = parts[1].trim();
+        List<CategoryMatch> matches = categoryService.findElements(userId, text);
+        if (matches.isEmpty()) {
+            botMessageSender.sendMessage(chatId, "По запросу \"" + text + "\" ничего не найдено.", false);
+            return;
+        }
+
+        StringBuilder response = new StringBuilder("Найденные элементы:\n");
+        for (CategoryMatch match : matches) {
+            response.append('\n').append(shorten(match.getPath()));
+        }
+        botMessageSender.sendMessage(chatId, response.toString(), false);
+    }
+
+    /**
+     * Shortens a long path to its end, which holds the found category and its closest ancestors.
+     *
+     * @param path the path of a category
+     * @return the path, or its last {@value #MAX_PATH_LENGTH} characters preceded by an ellipsis
+     */
+    private static String shorten(String path) {
+        return path.length() <= MAX_PATH_LENGTH ? path : "…" + path.substring(path.length() - MAX_PATH_LENGTH);
+    }
+
+    @Override
+    public String getName() {
+        return "/find";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Ищет элементы по части названия и показывает путь к ним. \nПример: /find <текст>.";
+    }
+}
@@ -0,0 +1,76 @@
+package kz.nurbay.telegrambot.command;
+
+import kz.nurbay.telegrambot.bot.BotMessageSender;
+import kz.nurbay.telegrambot.service.CategoryService;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Handles the /moveElement command, which allows users to move a category element, together with its children,
+ * under another element of the category tree.
+ */
+@Component
+public class MoveElementCommand implements BotCommand {
+
+    private final CategoryService categoryService;
+    private final BotMessageSender botMessageSender;
+
+    public MoveElementCommand(CategoryService categoryService, BotMessageSender botMessageSender) {
+        this.categoryService = categoryService;
+        this.botMessageSender = botMessageSender;
+    }
+
+    /**
+     * Executes the /moveElement command.
+     * Moves the specified element with all its children under the new parent element.
+     * If an element does not exist or the move would put the element inside its own subtree,
+     * an appropriate message is sent to the user.
+     *
+     * @param update the incoming update from Telegram containing the command and its arguments
+     */
+    @Override
+    public void execute(Update update) {
+        Long chatId = update.getMessage().getChatId();
+        Long userId = update.getMessage().getFrom().getId();
+        String[] parts = update.getMessage().getText().split(" ");
+
+        if (parts.length != 3) {
+            botMessageSender.sendMessage(
+                    chatId,
+                    "Пожалуйста, укажите элемент и новый родительский элемент. " +
+                            "Пример: /moveElement элемент родитель",
+                    false);
+            return;
+        }
+
+        String elementName = parts[1];
+        String parentElementName = parts[2];
+        String response;
+
+        if (!categoryService.elementExists(userId, elementName)) {
+            response = "Элемент \"" + elementName + "\" не найден.";
+        } else if (!categoryService.elementExists(userId, parentElementName)) {
+            response = "Родительский элемент \"" + parentElementName + "\" не найден.";
+        } else if (categoryService.moveElement(userId, elementName, parentElementName)) {
+            response = "Элемент \"" + elementName + "\" и его дочерние элементы " +
+                    "перемещены к родительскому элементу \"" + parentElementName + "\".";
+        } else {
+            response = "Элемент \"" + elementName + "\" нельзя переместить к \"" + parentElementName + "\": " +
+                    "корневой элемент не перемещается, а новый родитель не может быть самим элементом " +
+                    "или его дочерним элементом.";
+        }
+
+        botMessageSender.sendMessage(chatId, response, false);
+    }
+
+    @Override
+    public String getName() {
+        return "/moveElement";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Перемещает элемент вместе с дочерними элементами к другому родителю. " +
+                "\nПример: /moveElement <элемент> <новый родитель>.";
+    }
+}
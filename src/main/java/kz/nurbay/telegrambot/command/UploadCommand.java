@@ -0,0 +1,115 @@
+package kz.nurbay.telegrambot.command;
+
+import kz.nurbay.telegrambot.bot.BotFileDownloader;
+import kz.nurbay.telegrambot.bot.BotMessageSender;
+import kz.nurbay.telegrambot.service.CategoryImportException;
+import kz.nurbay.telegrambot.service.CategoryImportService;
+import kz.nurbay.telegrambot.service.CategoryService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Handles the /upload command, which builds the category tree from an Excel document.
+ * The document must be sent with the caption /upload and have the same layout as the one produced by /download.
+ */
+@Component
+public class UploadCommand implements BotCommand {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadCommand.class);
+    private final CategoryService categoryService;
+    private final CategoryImportService categoryImportService;
+    private final BotFileDownloader botFileDownloader;
+    private final BotMessageSender botMessageSender;
+
+    public UploadCommand(CategoryService categoryService, CategoryImportService categoryImportService,
+                         BotFileDownloader botFileDownloader, BotMessageSender botMessageSender) {
+        this.categoryService = categoryService;
+        this.categoryImportService = categoryImportService;
+        this.botFileDownloader = botFileDownloader;
+        this.botMessageSender = botMessageSender;
+    }
+
+    /**
+     * Executes the /upload command.
+     * Downloads the attached document and imports the categories from it.
+     * The import is only possible if the user does not have a tree yet.
+     *
+     * @param update the incoming update from Telegram containing the command and the document
+     */
+    @Override
+    public void execute(Update update) {
+        Message message = update.getMessage();
+        Long chatId = message.getChatId();
+        Long userId = message.getFrom().getId();
+
+        if (!message.hasDocument()) {
+            botMessageSender.sendMessage(chatId,
+                    "Пожалуйста, отправьте Excel документ с подписью /upload.", false);
+            return;
+        }
+        if (categoryService.rootElementExists(userId)) {
+            botMessageSender.sendMessage(chatId,
+                    "У вас уже есть дерево. Удалите корневой элемент командой /removeElement, чтобы загрузить новое.",
+                    false);
+            return;
+        }
+
+        File file;
+        try {
+            file = botFileDownloader.download(message.getDocument().getFileId());
+        } catch (TelegramApiException e) {
+            log.error("Error downloading document from chat {}: {}", chatId, e.getMessage());
+            botMessageSender.sendMessage(chatId, "Не удалось загрузить файл.", false);
+            return;
+        }
+
+        String response;
+        try {
+            int count = categoryImportService.importExcel(userId, file.toPath());
+            response = "Дерево загружено. Добавлено элементов: " + count + ".";
+        } catch (CategoryImportException e) {
+            response = e.getMessage();
+        } catch (DataIntegrityViolationException e) {
+            response = "Названия элементов в файле должны быть уникальными.";
+        } catch (IOException e) {
+            log.error("Error reading document from chat {}: {}", chatId, e.getMessage());
+            response = "Не удалось прочитать файл.";
+        } finally {
+            deleteFile(file);
+        }
+        botMessageSender.sendMessage(chatId, response, false);
+    }
+
+    /**
+     * Deletes the downloaded file once it has been imported.
+     *
+     * @param file the file to delete
+     */
+    private void deleteFile(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            log.error("Error deleting file {}: {}", file, e.getMessage());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "/upload";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Загружает дерево категорий из Excel документа в формате /download. " +
+                "Отправьте документ с подписью /upload.";
+    }
+}
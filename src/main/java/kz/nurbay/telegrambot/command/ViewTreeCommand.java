@@ -2,18 +2,23 @@ package kz.nurbay.telegrambot.command;
 
 import kz.nurbay.telegrambot.bot.BotMessageSender;
 import kz.nurbay.telegrambot.service.CategoryService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import kz.nurbay.telegrambot.service.TreePage;
 import org.springframework.stereotype.Component;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardRow;
 
 /**
  * Handles the /viewTree command, which allows users to view the structure of their category tree.
+ * A large tree is shown page by page; the inline buttons under the message switch between pages
+ * by editing the message in place.
  */
 @Component
-public class ViewTreeCommand implements BotCommand {
+public class ViewTreeCommand implements BotCommand, BotCallback {
 
-    private static final Logger log = LoggerFactory.getLogger(ViewTreeCommand.class);
+    private static final String CALLBACK_PREFIX = "tree";
 
     private final CategoryService categoryService;
     private final BotMessageSender botMessageSender;
@@ -25,8 +30,9 @@ public class ViewTreeCommand implements BotCommand {
 
     /**
      * Executes the /viewTree command.
-     * Checks if the user has a root category. If not, a message is sent suggesting the user create a root element.
-     * If a tree exists, it sends the tree structure as a formatted message.
+     * Retrieves the first page of the rendered tree of the user. If the user has no tree, a message is sent
+     * suggesting the user create a root element. Otherwise, it sends the page as a formatted message
+     * with buttons to the other pages.
      *
      * @param update the incoming update from Telegram containing the command
      */
@@ -35,17 +41,82 @@ public class ViewTreeCommand implements BotCommand {
         Long chatId = update.getMessage().getChatId();
         Long userId = update.getMessage().getFrom().getId();
 
-        boolean rootExists = categoryService.rootElementExists(userId);
+        TreePage page = categoryService.getTreePage(userId, 0);
 
-        if (!rootExists) {
-            String response = "У вас еще нет дерева. " +
-                    "Создайте корневой элемент с помощью команды /addElement <название>";
-            botMessageSender.sendMessage(chatId, response, false);
+        if (page == null) {
+            botMessageSender.sendMessage(chatId, noTreeMessage(), false);
+        } else {
+            botMessageSender.sendMessage(chatId, page.text(), true, keyboard(page));
+        }
+    }
+
+    /**
+     * Shows another page of the tree in the message whose button was pressed.
+     * The callback data has the form "tree:version:page". If the tree has changed since the message was sent,
+     * page positions may have shifted, so the first page of the current tree is shown instead.
+     *
+     * @param update the incoming update from Telegram containing the callback query
+     */
+    @Override
+    public void handleCallback(Update update) {
+        CallbackQuery callbackQuery = update.getCallbackQuery();
+        Long userId = callbackQuery.getFrom().getId();
+        Long chatId = callbackQuery.getMessage().getChatId();
+        Integer messageId = callbackQuery.getMessage().getMessageId();
+
+        String[] data = callbackQuery.getData().split(":");
+        long version;
+        int pageNumber;
+        try {
+            version = Long.parseLong(data[1]);
+            pageNumber = Math.max(Integer.parseInt(data[2]), 0);
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            botMessageSender.answerCallbackQuery(chatId, callbackQuery.getId(), null);
+            return;
+        }
 
+        TreePage page = categoryService.getTreePage(userId, pageNumber);
+        String notification = null;
+        if (page != null && page.version() != version && pageNumber != 0) {
+            page = categoryService.getTreePage(userId, 0);
+            notification = "Дерево изменилось, показана первая страница.";
+        }
+
+        if (page == null) {
+            botMessageSender.editMessage(chatId, messageId, noTreeMessage(), false, null);
         } else {
-            String treeStructure = categoryService.getTreeStructure(userId);
-            botMessageSender.sendMessage(chatId, treeStructure, true);
+            botMessageSender.editMessage(chatId, messageId, page.text(), true, keyboard(page));
         }
+        botMessageSender.answerCallbackQuery(chatId, callbackQuery.getId(), notification);
+    }
+
+    /**
+     * Builds the buttons to the previous and the next page.
+     *
+     * @param page the page being shown
+     * @return the inline keyboard, or null if the tree fits on a single page
+     */
+    private InlineKeyboardMarkup keyboard(TreePage page) {
+        InlineKeyboardRow row = new InlineKeyboardRow();
+        if (page.number() > 0) {
+            row.add(button("◀ Назад", page.version(), page.number() - 1));
+        }
+        if (page.hasNext()) {
+            row.add(button("Вперед ▶", page.version(), page.number() + 1));
+        }
+        return row.isEmpty() ? null : InlineKeyboardMarkup.builder().keyboardRow(row).build();
+    }
+
+    private InlineKeyboardButton button(String text, long version, int pageNumber) {
+        return InlineKeyboardButton.builder()
+                .text(text)
+                .callbackData(CALLBACK_PREFIX + ":" + version + ":" + pageNumber)
+                .build();
+    }
+
+    private String noTreeMessage() {
+        return "У вас еще нет дерева. " +
+                "Создайте корневой элемент с помощью команды /addElement <название>";
     }
 
     @Override
@@ -57,5 +128,9 @@ public class ViewTreeCommand implements BotCommand {
     public String getDescription() {
         return "Отображает дерево в структурированном виде.";
     }
-}
 
+    @Override
+    public String getCallbackPrefix() {
+        return CALLBACK_PREFIX;
+    }
+}
@@ -6,9 +6,12 @@ import org.springframework.context.annotation.Configuration;
 import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
 import org.telegram.telegrambots.meta.generics.TelegramClient;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * Configuration class that provides a bean for the {@link TelegramClient},
- * which is used to interact with the Telegram API.
+ * which is used to interact with the Telegram API, and the executor commands run on.
  */
 @Configuration
 public class TelegramBotConfig {
@@ -22,5 +25,17 @@ public class TelegramBotConfig {
     public TelegramClient telegramClient(@Value("${telegram.bot.token}") String botToken) {
         return new OkHttpTelegramClient(botToken);
     }
-}
 
+    /**
+     * Creates the executor that runs the commands, one virtual thread per task.
+     * Besides the updates dispatched to the commands, it runs the work commands continue with once
+     * a request to Telegram completes, so that the threads sending requests never run commands.
+     * The executor is closed on shutdown, which waits for the running tasks.
+     *
+     * @return the executor of the commands
+     */
+    @Bean(destroyMethod = "close")
+    public ExecutorService commandExecutor() {
+        return Executors.newVirtualThreadPerTaskExecutor();
+    }
+}
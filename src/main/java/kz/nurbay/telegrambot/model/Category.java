@@ -12,9 +12,11 @@ import jakarta.persistence.*;
 public class Category {
     /**
      * Automatically generated primary key and identifier for the category.
+     * IDs are taken from the sequence in blocks, so that new categories can be inserted in batches.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "categories_id_seq")
+    @SequenceGenerator(name = "categories_id_seq", sequenceName = "categories_id_seq", allocationSize = 100)
     private Long id;
 
     /**
@@ -28,8 +30,9 @@ public class Category {
      * The parent category of this category.
      * This establishes the parent-child relationship within the categories.
      * If this field is null, it means the category is a root category.
+     * The parent is loaded lazily, so loading categories does not load their ancestors.
      */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "parent_id")
     private Category parent;
 
@@ -41,6 +44,13 @@ public class Category {
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
+    /**
+     * The materialized path of the category: the IDs of all its ancestors from the root down to the category itself.
+     * The path is maintained by the database when the category is inserted and is read-only here.
+     */
+    @Column(name = "path", insertable = false, updatable = false)
+    private Long[] path;
+
     // Getters and setters
     public Long getId() {
         return id;
@@ -73,5 +83,9 @@ public class Category {
     public void setUser(User user) {
         this.user = user;
     }
+
+    public Long[] getPath() {
+        return path;
+    }
 }
 
@@ -0,0 +1,20 @@
+package kz.nurbay.telegrambot.model;
+
+/**
+ * A category found by a name search, together with the names of its ancestors.
+ * A projection of a native query, so it is read through getters rather than being a record.
+ */
+public interface CategoryMatch {
+
+    Long getId();
+
+    String getName();
+
+    /**
+     * Returns the names of the category's ancestors and of the category itself, from the root down,
+     * separated by {@code " / "}.
+     *
+     * @return the path of the category
+     */
+    String getPath();
+}
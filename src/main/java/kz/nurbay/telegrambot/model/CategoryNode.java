@@ -0,0 +1,11 @@
+package kz.nurbay.telegrambot.model;
+
+/**
+ * A lightweight, immutable view of a {@link Category} that holds only what is needed to build the tree.
+ *
+ * @param id       the ID of the category
+ * @param parentId the ID of the parent category, or null if the category is the root
+ * @param name     the name of the category
+ */
+public record CategoryNode(Long id, Long parentId, String name) {
+}
@@ -0,0 +1,11 @@
+package kz.nurbay.telegrambot.model;
+
+/**
+ * A category as a row of an exported tree: its name and its depth, which is all an export needs
+ * when the categories arrive in depth-first order.
+ *
+ * @param name  the name of the category
+ * @param depth the depth of the category in its tree; the root has depth 0
+ */
+public record CategoryRow(String name, Integer depth) {
+}
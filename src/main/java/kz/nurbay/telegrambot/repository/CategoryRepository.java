@@ -1,19 +1,123 @@
 package kz.nurbay.telegrambot.repository;
 
 import kz.nurbay.telegrambot.model.Category;
-import kz.nurbay.telegrambot.model.User;
+import jakarta.persistence.QueryHint;
+import kz.nurbay.telegrambot.model.CategoryMatch;
+import kz.nurbay.telegrambot.model.CategoryNode;
+import kz.nurbay.telegrambot.model.CategoryRow;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
-import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface CategoryRepository extends JpaRepository<Category, Long> {
 
-    Category findByNameAndUserId(String parentName, Long userId);
-
     boolean existsByUserIdAndParentIsNull(Long userId);
 
-    List<Category> findAllByUserId(Long userId);
+    /**
+     * Streams all categories of the user as read-only nodes, without loading the entities.
+     * Only the ID, the parent ID and the name of each category are selected. The rows are fetched from a cursor
+     * in chunks of the fetch size instead of being read into memory at once, so the stream must be consumed
+     * inside a transaction and closed afterwards.
+     *
+     * @param userId the ID of the user
+     * @return the categories of the user in no particular order
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("""
+            select new kz.nurbay.telegrambot.model.CategoryNode(c.id, c.parent.id, c.name) from Category c
+            where c.user.id = :userId
+            """)
+    Stream<CategoryNode> streamNodesByUserId(Long userId);
+
+    /**
+     * Streams the names and depths of all categories of the user in depth-first order, with siblings ordered by ID.
+     * The rows are fetched from a cursor like in {@link #streamNodesByUserId(Long)}, so an export can write
+     * each category as it arrives without building the tree.
+     *
+     * @param userId the ID of the user
+     * @return the categories of the user's tree, starting with the root
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("""
+            select new kz.nurbay.telegrambot.model.CategoryRow(c.name, array_length(c.path) - 1) from Category c
+            where c.user.id = :userId
+            order by c.path
+            """)
+    Stream<CategoryRow> streamRowsByUserIdInTreeOrder(Long userId);
+
+    /**
+     * Finds the user's categories whose name contains the pattern or is similar to the text.
+     * Both conditions are answered from the trigram index on the name and combined with the user index,
+     * so the categories of the user are not read one by one. Substring matches come first, followed by
+     * the closest fuzzy matches. The path of every match is built from the materialized path,
+     * with one primary key lookup per ancestor.
+     *
+     * @param userId  the ID of the user
+     * @param pattern the ILIKE pattern, with the wildcards of the text escaped
+     * @param text    the text to compare the names with
+     * @param limit   the maximum number of matches
+     * @return the matching categories with their paths, best matches first
+     */
+    @Query(value = """
+            SELECT c.id AS id, c.name AS name,
+                   (SELECT string_agg(a.name, ' / ' ORDER BY p.ord)
+                    FROM unnest(c.path) WITH ORDINALITY AS p(id, ord)
+                    JOIN categories a ON a.id = p.id) AS path
+            FROM categories c
+            WHERE c.user_id = :userId AND (c.name ILIKE :pattern OR c.name % :text)
+            ORDER BY c.name ILIKE :pattern DESC, similarity(c.name, :text) DESC, c.id
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<CategoryMatch> searchByName(Long userId, String pattern, String text, int limit);
+
+    /**
+     * Deletes the user's category with the given name together with all its descendants in a single statement.
+     * If several categories share the name, the one with the lowest ID is deleted.
+     * The subtree is found through the materialized path index, so no categories are loaded
+     * and the cost depends only on the size of the subtree.
+     *
+     * @param userId the ID of the user who owns the category
+     * @param name   the name of the category to delete
+     * @return the number of deleted categories, or 0 if the category was not found
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            DELETE FROM categories
+            WHERE path @> ARRAY[(SELECT min(id) FROM categories WHERE user_id = :userId AND name = :name)]
+            """, nativeQuery = true)
+    int deleteSubtreeByName(Long userId, String name);
 
-    Optional<Category> findByNameAndUser(String elementName, User user);
+    /**
+     * Moves the user's category with the given name, together with its descendants, under a new parent
+     * in a single statement. The move is refused in the same statement if the category is the root or
+     * the new parent lies inside the moved subtree, which is checked on the materialized path
+     * of the new parent without walking the tree. The path of every moved category is rewritten,
+     * so unlike the check, the cost of the move grows with the size of the subtree: the paths are what let
+     * subtree deletes, the depth-first export and this check use the path index instead of walking the tree.
+     *
+     * @param userId     the ID of the user who owns the categories
+     * @param name       the name of the category to move
+     * @param parentName the name of the new parent
+     * @return the number of moved categories, or 0 if a category was not found or the move is not allowed
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            UPDATE categories c
+            SET parent_id = CASE WHEN c.id = n.id THEN p.id ELSE c.parent_id END,
+                path = p.path || c.path[array_position(c.path, n.id):]
+            FROM categories n, categories p
+            WHERE n.user_id = :userId AND n.name = :name AND n.parent_id IS NOT NULL
+              AND p.user_id = :userId AND p.name = :parentName
+              AND NOT p.path @> ARRAY[n.id]
+              AND c.path @> ARRAY[n.id]
+            """, nativeQuery = true)
+    int moveSubtree(Long userId, String name, String parentName);
 }
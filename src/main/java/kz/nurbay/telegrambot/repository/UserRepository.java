@@ -2,6 +2,44 @@ package kz.nurbay.telegrambot.repository;
 
 import kz.nurbay.telegrambot.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
-}
\ No newline at end of file
+
+    /**
+     * Inserts the user unless a user with the same ID already exists, in a single statement.
+     *
+     * @param id the Telegram ID of the user
+     * @return 1 if the user was inserted, 0 if the user already existed
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO users (id) VALUES (:id) ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfNotExists(Long id);
+
+    /**
+     * Returns the version of the user's category tree.
+     *
+     * @param id the Telegram ID of the user
+     * @return the version of the tree, or null if the user does not exist
+     */
+    @Query(value = "SELECT tree_version FROM users WHERE id = :id", nativeQuery = true)
+    Long findTreeVersionById(Long id);
+
+    /**
+     * Increments the version of the user's category tree if it still equals the expected version.
+     * The updated row stays locked until the transaction ends, so of two transactions that read the same version
+     * only the first one to commit succeeds, and the other one updates nothing.
+     *
+     * @param id      the Telegram ID of the user
+     * @param version the version the caller read before modifying the tree
+     * @return 1 if the version was incremented, 0 if the tree was modified by someone else in the meantime
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE users SET tree_version = tree_version + 1 WHERE id = :id AND tree_version = :version",
+            nativeQuery = true)
+    int incrementTreeVersion(Long id, long version);
+}
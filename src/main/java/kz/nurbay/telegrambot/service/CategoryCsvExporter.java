@@ -0,0 +1,67 @@
+package kz.nurbay.telegrambot.service;
+
+import kz.nurbay.telegrambot.model.CategoryRow;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Writes a category tree as CSV (RFC 4180) with the columns {@code level,name,parent}.
+ * Names are unique within a tree, so the parent name is enough to rebuild the tree from the file.
+ * Only the names of the ancestors of the current row are kept while writing.
+ */
+@Component
+public class CategoryCsvExporter implements CategoryExporter {
+
+    @Override
+    public ExportFormat getFormat() {
+        return ExportFormat.CSV;
+    }
+
+    @Override
+    public void export(Stream<CategoryRow> rows, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writer.write("level,name,parent\r\n");
+
+        // The names of the ancestors of the current row, indexed by depth
+        List<String> ancestors = new ArrayList<>();
+        for (Iterator<CategoryRow> iterator = rows.iterator(); iterator.hasNext(); ) {
+            CategoryRow category = iterator.next();
+            int depth = category.depth();
+            ancestors.subList(Math.min(depth, ancestors.size()), ancestors.size()).clear();
+
+            writer.write(Integer.toString(depth));
+            writer.write(',');
+            writeField(writer, category.name());
+            writer.write(',');
+            if (depth > 0) {
+                writeField(writer, ancestors.get(depth - 1));
+            }
+            writer.write("\r\n");
+            ancestors.add(category.name());
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes a field, quoted if it contains a separator, a quote or a line break.
+     */
+    private static void writeField(Writer writer, String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+}
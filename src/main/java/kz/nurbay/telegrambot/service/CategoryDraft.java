@@ -0,0 +1,10 @@
+package kz.nurbay.telegrambot.service;
+
+/**
+ * A category to be added to a user's tree.
+ *
+ * @param parentName the name of the parent category, or null if the category is the root
+ * @param name       the name of the new category
+ */
+public record CategoryDraft(String parentName, String name) {
+}
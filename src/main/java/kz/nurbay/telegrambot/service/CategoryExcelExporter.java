@@ -0,0 +1,66 @@
+package kz.nurbay.telegrambot.service;
+
+import kz.nurbay.telegrambot.model.CategoryRow;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes a category tree to an Excel document.
+ * The document is written with POI's streaming SXSSF API, which keeps only a fixed window of rows in memory
+ * and flushes the rest to disk, and the tree is read as a stream of rows in depth-first order,
+ * so it is never held in memory as a whole and the memory used does not depend on its size.
+ */
+@Component
+public class CategoryExcelExporter implements CategoryExporter {
+
+    /**
+     * The number of rows kept in memory while the sheet is being written.
+     */
+    private static final int ROW_WINDOW = 100;
+    /**
+     * The index of the last column of an .xlsx sheet, which limits the depth of an exported tree.
+     */
+    static final int MAX_COLUMN_INDEX = 16383;
+
+    @Override
+    public ExportFormat getFormat() {
+        return ExportFormat.XLSX;
+    }
+
+    /**
+     * Writes the rows of a tree to the given output stream as they are read from the stream.
+     * Each row is written in the column matching its depth and dropped right after, so only
+     * the window of rows not yet flushed to disk is kept in memory.
+     *
+     * @param rows         the categories of the tree in depth-first order, starting with the root
+     * @param outputStream the stream the Excel document is written to
+     * @throws IOException if the document cannot be written or the tree is too deep
+     */
+    @Override
+    public void export(Stream<CategoryRow> rows, OutputStream outputStream) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        try {
+            Sheet sheet = workbook.createSheet("Categories");
+
+            int rowIdx = 0;
+            for (Iterator<CategoryRow> iterator = rows.iterator(); iterator.hasNext(); ) {
+                CategoryRow category = iterator.next();
+                if (category.depth() > MAX_COLUMN_INDEX) {
+                    throw new IOException("Category tree is deeper than " + MAX_COLUMN_INDEX + " levels");
+                }
+                sheet.createRow(rowIdx++).createCell(category.depth()).setCellValue(category.name());
+            }
+
+            workbook.write(outputStream);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+}
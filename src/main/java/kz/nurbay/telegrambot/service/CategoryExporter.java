@@ -0,0 +1,53 @@
+package kz.nurbay.telegrambot.service;
+
+import kz.nurbay.telegrambot.model.CategoryRow;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Writes a category tree in one of the {@link ExportFormat}s.
+ * The tree is read as a stream of rows in depth-first order and every row is written as it arrives,
+ * so an exporter never holds the whole tree in memory.
+ */
+public interface CategoryExporter {
+
+    /**
+     * Returns the format the exporter writes.
+     *
+     * @return the format of the written documents
+     */
+    ExportFormat getFormat();
+
+    /**
+     * Writes the rows of a tree to the given output stream as they are read from the stream.
+     *
+     * @param rows         the categories of the tree in depth-first order, starting with the root
+     * @param outputStream the stream the document is written to; it is flushed but not closed
+     * @throws IOException if the document cannot be written
+     */
+    void export(Stream<CategoryRow> rows, OutputStream outputStream) throws IOException;
+
+    /**
+     * Writes the rows of a tree to a new temporary file with the extension of the format.
+     * The caller is responsible for deleting the file once it is no longer needed.
+     *
+     * @param rows the categories of the tree in depth-first order, starting with the root
+     * @return the path of the created file
+     * @throws IOException if the file cannot be written
+     */
+    default Path exportToTempFile(Stream<CategoryRow> rows) throws IOException {
+        Path file = Files.createTempFile("categories-", "." + getFormat().getExtension());
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(file))) {
+            export(rows, outputStream);
+            return file;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package kz.nurbay.telegrambot.service;
+
+/**
+ * Thrown when a file cannot be imported as a category tree.
+ * The message describes the problem and can be shown to the user.
+ */
+public class CategoryImportException extends RuntimeException {
+
+    public CategoryImportException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,186 @@
+package kz.nurbay.telegrambot.service;
+
+import jakarta.persistence.EntityManager;
+import kz.nurbay.telegrambot.model.Category;
+import kz.nurbay.telegrambot.repository.CategoryRepository;
+import kz.nurbay.telegrambot.repository.UserRepository;
+import org.apache.poi.UnsupportedFileFormatException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Imports a category tree from an Excel document with the layout produced by {@link CategoryExcelExporter}:
+ * one category per row, placed in the column matching its depth in the tree.
+ * The document is read with POI's streaming SAX reader, and categories are written in batches,
+ * so the memory used does not depend on the number of rows.
+ */
+@Service
+public class CategoryImportService {
+
+    /**
+     * The number of categories written before the persistence context is flushed and cleared.
+     * Matches the JDBC batch size.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    private final CategoryRepository categoryRepository;
+    private final UserRepository userRepository;
+    private final EntityManager entityManager;
+    private final CategoryTreeVersions categoryTreeVersions;
+
+    public CategoryImportService(CategoryRepository categoryRepository, UserRepository userRepository,
+                                 EntityManager entityManager, CategoryTreeVersions categoryTreeVersions) {
+        this.categoryRepository = categoryRepository;
+        this.userRepository = userRepository;
+        this.entityManager = entityManager;
+        this.categoryTreeVersions = categoryTreeVersions;
+    }
+
+    /**
+     * Imports the categories from the first sheet of the Excel file into the user's tree in one transaction.
+     * The user must have no tree yet. The version of the tree is incremented before the categories are inserted,
+     * so other modifications of the tree wait for the import to end. If the file cannot be read to the end,
+     * the import is rolled back.
+     *
+     * @param userId the ID of the user who is importing the tree
+     * @param file   the Excel file to import
+     * @return the number of imported categories
+     * @throws IOException             if the file cannot be read
+     * @throws CategoryImportException if the file does not describe a valid category tree
+     */
+    @Transactional(rollbackFor = IOException.class)
+    public int importExcel(Long userId, Path file) throws IOException {
+        long version = categoryTreeVersions.read(userId);
+        if (categoryRepository.existsByUserIdAndParentIsNull(userId)) {
+            throw new CategoryImportException(
+                    "У вас уже есть дерево. Удалите корневой элемент командой /removeElement, чтобы загрузить новое.");
+        }
+        // Incremented before the categories are inserted, so a concurrent modification waits for the user's row
+        try {
+            categoryTreeVersions.compareAndIncrement(userId, version, null);
+        } catch (TreeVersionConflictException e) {
+            throw new CategoryImportException("Дерево было изменено во время загрузки. Попробуйте ещё раз.");
+        }
+        TreeRowHandler rowHandler = new TreeRowHandler(userId);
+
+        try (OPCPackage excelPackage = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(excelPackage);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(excelPackage, false);
+
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(new XSSFSheetXMLHandler(
+                    reader.getStylesTable(), strings, rowHandler, new DataFormatter(), false));
+
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                throw new CategoryImportException("Файл не содержит ни одного листа.");
+            }
+            try (InputStream sheet = sheets.next()) {
+                parser.parse(new InputSource(sheet));
+            }
+        } catch (OpenXML4JException | UnsupportedFileFormatException | SAXException | ParserConfigurationException e) {
+            throw new CategoryImportException("Не удалось прочитать файл. Отправьте документ в формате .xlsx.");
+        }
+
+        categoryRepository.flush();
+        if (rowHandler.count == 0) {
+            throw new CategoryImportException("Файл не содержит ни одного элемента.");
+        }
+        return rowHandler.count;
+    }
+
+    /**
+     * Receives the rows of the sheet one by one and saves each non-empty row as a category.
+     * Only the IDs of the ancestors of the current row are kept in memory.
+     */
+    private class TreeRowHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final Long userId;
+        /**
+         * The IDs of the last saved category at each level of the tree, from the root down.
+         */
+        private final List<Long> ancestors = new ArrayList<>();
+        private int count;
+
+        private int rowNum;
+        private int rowLevel;
+        private String rowName;
+
+        TreeRowHandler(Long userId) {
+            this.userId = userId;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            this.rowNum = rowNum;
+            this.rowName = null;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            if (rowName == null && formattedValue != null && !formattedValue.isBlank()) {
+                rowLevel = cellReference != null ? new CellReference(cellReference).getCol() : 0;
+                rowName = formattedValue.trim();
+            }
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (rowName != null) {
+                save(rowLevel, rowName);
+            }
+        }
+
+        /**
+         * Saves the category of the current row under the last category saved one level above.
+         */
+        private void save(int level, String name) {
+            String lineNumber = "Строка " + (rowNum + 1) + ": ";
+            if (level == 0 && count > 0) {
+                throw new CategoryImportException(lineNumber + "в дереве может быть только один корневой элемент.");
+            }
+            if (level > ancestors.size()) {
+                throw new CategoryImportException(lineNumber + "у элемента \"" + name + "\" нет родительского элемента.");
+            }
+
+            Category category = new Category();
+            category.setName(name);
+            category.setUser(userRepository.getReferenceById(userId));
+            if (level > 0) {
+                category.setParent(categoryRepository.getReferenceById(ancestors.get(level - 1)));
+            }
+            categoryRepository.save(category);
+
+            while (ancestors.size() > level) {
+                ancestors.remove(ancestors.size() - 1);
+            }
+            ancestors.add(category.getId());
+
+            if (++count % BATCH_SIZE == 0) {
+                categoryRepository.flush();
+                entityManager.clear();
+            }
+        }
+    }
+}
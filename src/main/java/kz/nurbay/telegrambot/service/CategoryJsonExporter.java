@@ -0,0 +1,70 @@
+package kz.nurbay.telegrambot.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteConstraints;
+import kz.nurbay.telegrambot.model.CategoryRow;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes a category tree as nested JSON objects: {@code {"name": "...", "children": [...]}}.
+ * The document is written with Jackson's streaming generator. Objects are opened and closed
+ * as the depth of the rows changes, so nothing but the generator's nesting is kept while writing.
+ * Each level of the tree nests an object and a children array, so the generator's nesting limit is lifted:
+ * the depth of a tree is not limited, and a chain of categories is as deep as it is long.
+ */
+@Component
+public class CategoryJsonExporter implements CategoryExporter {
+
+    private final JsonFactory jsonFactory = JsonFactory.builder()
+            .streamWriteConstraints(StreamWriteConstraints.builder().maxNestingDepth(Integer.MAX_VALUE).build())
+            .build();
+
+    @Override
+    public ExportFormat getFormat() {
+        return ExportFormat.JSON;
+    }
+
+    @Override
+    public void export(Stream<CategoryRow> rows, OutputStream outputStream) throws IOException {
+        try (JsonGenerator generator = jsonFactory.createGenerator(outputStream)
+                .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false)) {
+            // The depth of the last written category, whose object is still open
+            int open = -1;
+            for (Iterator<CategoryRow> iterator = rows.iterator(); iterator.hasNext(); ) {
+                CategoryRow category = iterator.next();
+                int depth = category.depth();
+                if (open >= 0 && depth > open) {
+                    // The first child of the last category
+                    generator.writeArrayFieldStart("children");
+                } else if (open >= 0) {
+                    // A sibling of the last category or of one of its ancestors
+                    generator.writeEndObject();
+                    closeLevels(generator, open - depth);
+                }
+                generator.writeStartObject();
+                generator.writeStringField("name", category.name());
+                open = depth;
+            }
+            if (open >= 0) {
+                generator.writeEndObject();
+                closeLevels(generator, open);
+            }
+        }
+    }
+
+    /**
+     * Closes the children arrays and the objects of the given number of ancestors.
+     */
+    private static void closeLevels(JsonGenerator generator, int levels) throws IOException {
+        for (int i = 0; i < levels; i++) {
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+}
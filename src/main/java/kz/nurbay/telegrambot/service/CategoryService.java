@@ -1,121 +1,213 @@
 package kz.nurbay.telegrambot.service;
 
 import kz.nurbay.telegrambot.model.Category;
+import kz.nurbay.telegrambot.model.CategoryMatch;
+import kz.nurbay.telegrambot.model.CategoryNode;
+import kz.nurbay.telegrambot.model.CategoryRow;
 import kz.nurbay.telegrambot.model.User;
 import kz.nurbay.telegrambot.repository.CategoryRepository;
-import kz.nurbay.telegrambot.repository.UserRepository;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
 
 @Service
 public class CategoryService {
 
     private static final Logger log = LoggerFactory.getLogger(CategoryService.class);
+    /**
+     * The maximum length of the rendered lines of a tree page, leaving room for the code block
+     * within Telegram's limit of 4096 characters per message.
+     */
+    private static final int PAGE_MAX_CHARS = 4000;
+    /**
+     * The maximum number of categories returned by a name search.
+     */
+    private static final int FIND_LIMIT = 20;
+    /**
+     * The number of times a modification of a tree is attempted before a concurrent modification wins.
+     */
+    private static final int MAX_ATTEMPTS = 5;
     private final CategoryRepository categoryRepository;
-    private final UserRepository userRepository;
-
-    public CategoryService(UserRepository userRepository, CategoryRepository categoryRepository) {
-        this.userRepository = userRepository;
+    private final UserService userService;
+    private final CategoryTreeCache categoryTreeCache;
+    private final CategoryTreeVersions categoryTreeVersions;
+    private final RenderedTreeCache renderedTreeCache;
+    private final Map<ExportFormat, CategoryExporter> exporters = new EnumMap<>(ExportFormat.class);
+    private final TransactionTemplate transaction;
+    private final TransactionTemplate readOnlyTransaction;
+    private final int pageMaxLines;
+
+    public CategoryService(UserService userService, CategoryRepository categoryRepository,
+                           CategoryTreeCache categoryTreeCache, CategoryTreeVersions categoryTreeVersions,
+                           RenderedTreeCache renderedTreeCache, List<CategoryExporter> exporters,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${category.tree-page.max-lines:50}") int pageMaxLines) {
+        this.userService = userService;
         this.categoryRepository = categoryRepository;
+        this.categoryTreeCache = categoryTreeCache;
+        this.categoryTreeVersions = categoryTreeVersions;
+        this.renderedTreeCache = renderedTreeCache;
+        for (CategoryExporter exporter : exporters) {
+            this.exporters.put(exporter.getFormat(), exporter);
+        }
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.pageMaxLines = pageMaxLines;
     }
 
     /**
      * Checks if the user has a root category element.
+     * The cached tree is used if there is one; otherwise the database is asked, without loading the tree.
      *
      * @param userId the ID of the user to check for a root element
      * @return true if the user has a root element, false otherwise
      */
     public boolean rootElementExists(Long userId) {
-        return categoryRepository.existsByUserIdAndParentIsNull(userId);
+        CategoryTree tree = categoryTreeCache.getIfPresent(userId);
+        return tree != null ? tree.getRoot() != null : categoryRepository.existsByUserIdAndParentIsNull(userId);
     }
 
     /**
-     * Retrieves all categories of the given user.
+     * Checks if the user already has a category with the given name.
+     * Category names are unique within the tree of a user.
      *
-     * @param userId the ID of the user whose categories are being retrieved
-     * @return a list of categories belonging to the user
+     * @param userId the ID of the user
+     * @param name   the name of the category
+     * @return true if the category exists, false otherwise
      */
-    public List<Category> getAllCategoriesByUserId(Long userId) {
-        return categoryRepository.findAllByUserId(userId);
+    public boolean elementExists(Long userId, String name) {
+        return getCategoryTree(userId).findByName(name) != null;
     }
 
     /**
-     * Builds a string representation of the user's category tree structure.
+     * Returns the category tree of the given user.
+     * The tree is served from the {@link CategoryTreeCache} and loaded from the database only on a cache miss.
      *
-     * @param userId the ID of the user whose category tree is being built
-     * @return a formatted string representing the category tree
+     * @param userId the ID of the user whose category tree is being retrieved
+     * @return the category tree of the user
      */
-    public String getTreeStructure(Long userId) {
-        List<Category> categories = getAllCategoriesByUserId(userId);
-
-        Map<Long, List<Category>> categoryMap = new HashMap<>();
-        Category root = null;
+    public CategoryTree getCategoryTree(Long userId) {
+        return categoryTreeCache.get(userId, this::loadCategoryTree);
+    }
 
-        for (Category category : categories) {
-            Long parentId = category.getParent() != null ? category.getParent().getId() : null;
-            if (parentId == null) {
-                root = category;
-            } else {
-                categoryMap.computeIfAbsent(parentId, k -> new ArrayList<>()).add(category);
+    /**
+     * Loads the category tree of the given user from the database with a single projection query.
+     * The rows are streamed from a cursor in a read-only transaction and copied into the compact tree
+     * as they arrive, so neither the JDBC driver nor a list of nodes holds the whole result.
+     *
+     * @param userId the ID of the user whose category tree is being loaded
+     * @return the category tree of the user
+     */
+    private CategoryTree loadCategoryTree(Long userId) {
+        return readOnlyTransaction.execute(status -> {
+            CategoryTree.Builder builder = CategoryTree.builder();
+            try (Stream<CategoryNode> nodes = categoryRepository.streamNodesByUserId(userId)) {
+                nodes.forEach(builder::add);
             }
-        }
+            return builder.build();
+        });
+    }
 
-        StringBuilder treeBuilder = new StringBuilder();
-        treeBuilder.append("```\n");
-        treeBuilder.append(root.getName()).append("\n");
-        buildTreeStructure(treeBuilder, root, categoryMap, "", true);
-        treeBuilder.append("```");
-        return treeBuilder.toString();
+    /**
+     * Returns the current version of the user's tree, which changes with every modification of the tree.
+     *
+     * @param userId the ID of the user
+     * @return the version of the tree
+     */
+    public long getTreeVersion(Long userId) {
+        return categoryTreeVersions.get(userId);
     }
 
     /**
-     * Recursively builds the string representation of the category tree.
+     * Returns a page of the string representation of the user's category tree.
+     * Pages are rendered on demand: a page is rendered from the category it starts with, which is remembered
+     * for every page rendered from the current version of the tree, so only the lines of the requested page
+     * (and of pages never reached before) are rendered. Rendered pages are cached against the version of the tree.
      *
-     * @param builder     the StringBuilder used to construct the tree
-     * @param category    the current category being processed
-     * @param categoryMap the map of categories organized by parent ID
-     * @param prefix      the current indentation prefix for tree levels
-     * @param isLast      whether the current category is the last sibling in its branch
-     */
-    private void buildTreeStructure(StringBuilder builder, Category category, Map<Long, List<Category>> categoryMap, String prefix, boolean isLast) {
-        List<Category> children = categoryMap.get(category.getId());
-
-        if (children != null && !children.isEmpty()) {
-            for (int i = 0; i < children.size(); i++) {
-                Category child = children.get(i);
-                boolean isLastChild = (i == children.size() - 1);
-                String childPrefix = prefix + (isLast ? "    " : "│   ");
-                builder.append(childPrefix);
-                builder.append(isLastChild ? "└── " : "├── ");
-                builder.append(child.getName()).append("\n");
-                buildTreeStructure(builder, child, categoryMap, childPrefix, isLastChild);
+     * @param userId the ID of the user whose category tree is being rendered
+     * @param page   the number of the page, starting from 0
+     * @return the requested page, the last page if the tree has fewer pages, or null if the user has no tree
+     */
+    public TreePage getTreePage(Long userId, int page) {
+        long version = categoryTreeVersions.get(userId);
+        RenderedTreeCache.RenderedPage cached = renderedTreeCache.getPage(userId, version, page);
+        if (cached != null) {
+            return new TreePage(version, page, cached.text(), cached.hasNext());
+        }
+
+        CategoryTree tree = getCategoryTree(userId);
+        CategoryNode root = tree.getRoot();
+        if (root == null) {
+            return null;
+        }
+
+        RenderedTreeCache.PageStart pageStart = renderedTreeCache.getPageStart(userId, version, page);
+        int current = pageStart != null ? pageStart.page() : 0;
+        Long startId = pageStart != null ? pageStart.startId() : root.id();
+        while (true) {
+            StringBuilder pageBuilder = new StringBuilder(PAGE_MAX_CHARS + 8);
+            pageBuilder.append("```\n");
+            Long nextId = CategoryTreeRenderer.render(tree, startId, pageMaxLines, PAGE_MAX_CHARS, pageBuilder);
+            pageBuilder.append("```");
+
+            String text = pageBuilder.toString();
+            renderedTreeCache.putPage(userId, version, current, startId, nextId, text);
+            if (current == page || nextId == null) {
+                return new TreePage(version, current, text, nextId != null);
             }
+            startId = nextId;
+            current++;
         }
     }
 
+    /**
+     * Finds the user's categories whose name contains the given text, or is similar to it.
+     * The search runs in the database on the trigram index of the names, so it does not load the tree.
+     *
+     * @param userId the ID of the user whose categories are searched
+     * @param text   the text to search for
+     * @return up to {@value #FIND_LIMIT} matching categories with their paths, best matches first
+     */
+    public List<CategoryMatch> findElements(Long userId, String text) {
+        String pattern = "%" + text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return categoryRepository.searchByName(userId, pattern, text, FIND_LIMIT);
+    }
+
     /**
      * Adds a root element to the user's category tree.
      *
      * @param userId      the ID of the user who is adding the root element
      * @param elementName the name of the root element to add
+     * @return true if the root element was added, false if the user already has one
      */
-    public void addRootElement(Long userId, String elementName) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User with ID " + userId + " not found"));
-        Category category = new Category();
-        category.setName(elementName);
-        category.setUser(user);
-        categoryRepository.save(category);
+    public boolean addRootElement(Long userId, String elementName) {
+        return modifyTree(userId, tree -> {
+            if (tree.getRoot() != null) {
+                return null;
+            }
+
+            Category category = new Category();
+            category.setName(elementName);
+            category.setUser(userService.getReference(userId));
+            categoryRepository.save(category);
+            return cached -> cached.withNode(new CategoryNode(category.getId(), null, elementName));
+        });
     }
 
     /**
@@ -124,129 +216,197 @@ public class CategoryService {
      * @param userId     the ID of the user who is adding the child element
      * @param parentName the name of the parent category
      * @param childName  the name of the child category to add
-     * @return true if the parent exists and the child was added, false otherwise
+     * @return true if the child was added, false if the parent does not exist or the child already exists
      */
     public boolean addChildElement(Long userId, String parentName, String childName) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User with ID " + userId + " not found"));
-        Category parent = categoryRepository.findByNameAndUserId(parentName, userId);
-        if (parent != null) {
+        return modifyTree(userId, tree -> {
+            CategoryNode parent = tree.findByName(parentName);
+            if (parent == null || tree.findByName(childName) != null) {
+                return null;
+            }
+
             Category child = new Category();
             child.setName(childName);
-            child.setParent(parent);
-            child.setUser(user);
+            child.setParent(categoryRepository.getReferenceById(parent.id()));
+            child.setUser(userService.getReference(userId));
             categoryRepository.save(child);
-            return true;
+            return cached -> cached.withNode(new CategoryNode(child.getId(), parent.id(), childName));
+        });
+    }
+
+    /**
+     * Adds several categories to the user's tree in one transaction.
+     * A parent is either an existing category or a category added earlier in the same list.
+     * Parents are resolved from the cached tree, and the new categories are inserted in JDBC batches.
+     *
+     * @param userId the ID of the user who is adding the categories
+     * @param drafts the categories to add, each parent listed before its children
+     * @return true if the categories were added, false if a parent was not found or a category already exists
+     */
+    public boolean addElements(Long userId, List<CategoryDraft> drafts) {
+        return modifyTree(userId, tree -> {
+            User user = userService.getReference(userId);
+            Map<String, Category> added = new HashMap<>();
+            List<Category> categories = new ArrayList<>(drafts.size());
+            for (CategoryDraft draft : drafts) {
+                if (tree.findByName(draft.name()) != null) {
+                    return null;
+                }
+                Category parent = null;
+                if (draft.parentName() != null) {
+                    parent = added.get(draft.parentName());
+                    if (parent == null) {
+                        CategoryNode existing = tree.findByName(draft.parentName());
+                        if (existing == null) {
+                            return null;
+                        }
+                        parent = categoryRepository.getReferenceById(existing.id());
+                    }
+                }
+
+                Category category = new Category();
+                category.setName(draft.name());
+                category.setParent(parent);
+                category.setUser(user);
+                categories.add(category);
+                added.put(draft.name(), category);
+            }
+
+            categoryRepository.saveAll(categories);
+            categoryRepository.flush();
+            return cached -> cached.withNodes(toNodes(categories));
+        });
+    }
+
+    /**
+     * Converts saved categories into nodes of the cached tree.
+     */
+    private static List<CategoryNode> toNodes(List<Category> categories) {
+        List<CategoryNode> nodes = new ArrayList<>(categories.size());
+        for (Category category : categories) {
+            Long parentId = category.getParent() != null ? category.getParent().getId() : null;
+            nodes.add(new CategoryNode(category.getId(), parentId, category.getName()));
         }
-        return false;
+        return nodes;
     }
 
     /**
      * Removes a category and all its child elements from the user's category tree.
+     * The subtree is deleted by a single statement in the database, so the cost depends only on its size.
      *
      * @param userId      the ID of the user whose category is being removed
      * @param elementName the name of the category to remove
      * @return true if the category was found and removed, false otherwise
      */
     public boolean removeElementWithChildren(Long userId, String elementName) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() -> new RuntimeException("User with ID " + userId + " not found"));
-
-        Optional<Category> categoryOpt = categoryRepository.findByNameAndUser(elementName, user);
-
-        if (categoryOpt.isPresent()) {
-            Category category = categoryOpt.get();
-
-            List<Category> categories = categoryRepository.findAllByUserId(userId);
-
-            Map<Long, List<Category>> categoryMap = new HashMap<>();
-            for (Category cat : categories) {
-                Long parentId = cat.getParent() != null ? cat.getParent().getId() : null;
-                categoryMap.computeIfAbsent(parentId, k -> new ArrayList<>()).add(cat);
+        return modifyTree(userId, tree -> {
+            CategoryNode category = tree.findByName(elementName);
+            if (category == null || categoryRepository.deleteSubtreeByName(userId, elementName) == 0) {
+                return null;
             }
 
-            List<Long> idsToDelete = new ArrayList<>();
-            collectCategoryIds(category, categoryMap, idsToDelete);
-
-            categoryRepository.deleteAllByIdInBatch(idsToDelete);
-            return true;
-        } else {
-            return false;
-        }
+            return cached -> cached.withoutSubtree(category.id());
+        });
     }
 
     /**
-     * Recursively collects the IDs of the category and its child categories.
+     * Moves a category, together with all its child elements, under another category of the user's tree.
+     * The check that the new parent is not inside the moved subtree and the move itself are done
+     * by a single statement in the database, which rewrites the materialized path of every moved category.
      *
-     * @param category    the category being processed
-     * @param categoryMap the map of categories organized by parent ID
-     * @param ids         the list of IDs to delete
+     * @param userId     the ID of the user whose category is being moved
+     * @param name       the name of the category to move
+     * @param parentName the name of the new parent category
+     * @return true if the category was moved, false if it is the root, a category was not found,
+     * or the new parent is the category itself or one of its descendants
      */
-    private void collectCategoryIds(Category category, Map<Long, List<Category>> categoryMap, List<Long> ids) {
-        ids.add(category.getId());
-        List<Category> children = categoryMap.get(category.getId());
-
-        if (children != null) {
-            for (Category child : children) {
-                collectCategoryIds(child, categoryMap, ids);
+    public boolean moveElement(Long userId, String name, String parentName) {
+        return modifyTree(userId, tree -> {
+            CategoryNode category = tree.findByName(name);
+            CategoryNode parent = tree.findByName(parentName);
+            if (category == null || parent == null || categoryRepository.moveSubtree(userId, name, parentName) == 0) {
+                return null;
             }
-        }
+
+            return cached -> cached.withParent(category.id(), parent.id());
+        });
     }
 
     /**
-     * Creates an Excel file that represents the user's category tree.
+     * Runs a modification of the user's tree in a transaction that commits only if no one else modified the tree
+     * in the meantime. The transaction first increments the version of the cached tree known to this instance
+     * with a compare-and-set, so the version is not read from the database. If another transaction incremented it
+     * first, what this instance knows about the tree is forgotten and the modification is run again against
+     * the current tree, up to {@value #MAX_ATTEMPTS} times.
+     * The compare-and-set locks the user's row before the modification touches any category, so concurrent
+     * modifications of a tree wait for each other at that row and never lock categories in different orders.
+     * Modifications of different users never wait for each other. A refused modification is rolled back,
+     * together with the increment of the version.
      *
-     * @param categories the list of categories to include in the Excel file
-     * @return a ByteArrayInputStream representing the Excel file
-     */
-    public ByteArrayInputStream createExcelFileWithCategories(List<Category> categories) {
-        try (Workbook workbook = new XSSFWorkbook()) {
-            Sheet sheet = workbook.createSheet("Categories");
-
-            Map<Long, List<Category>> categoryMap = new HashMap<>();
-            Category root = null;
-
-            for (Category category : categories) {
-                Long parentId = category.getParent() != null ? category.getParent().getId() : null;
-                if (parentId == null) {
-                    root = category;
-                } else {
-                    categoryMap.computeIfAbsent(parentId, k -> new ArrayList<>()).add(category);
+     * @param userId       the ID of the user whose tree is modified
+     * @param modification the modification
+     * @return true if the tree was modified, false if the modification was refused
+     * @throws TreeVersionConflictException if the tree was modified concurrently in every attempt
+     */
+    private boolean modifyTree(Long userId, TreeModification modification) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return Boolean.TRUE.equals(transaction.execute(status -> {
+                    long version = categoryTreeVersions.get(userId);
+                    CategoryTree tree = getCategoryTree(userId);
+                    AtomicReference<UnaryOperator<CategoryTree>> update = new AtomicReference<>();
+                    categoryTreeVersions.compareAndIncrement(userId, version, cached -> update.get().apply(cached));
+
+                    update.set(modification.apply(tree));
+                    if (update.get() == null) {
+                        status.setRollbackOnly();
+                        return false;
+                    }
+                    return true;
+                }));
+            } catch (TreeVersionConflictException e) {
+                categoryTreeVersions.forget(userId);
+                if (attempt == MAX_ATTEMPTS) {
+                    throw e;
                 }
+                log.debug("Retrying modification of tree of user {}: {}", userId, e.getMessage());
             }
-
-            int[] rowIdx = {0};
-            buildExcelTree(sheet, root, categoryMap, rowIdx, 0);
-
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            workbook.write(outputStream);
-
-            return new ByteArrayInputStream(outputStream.toByteArray());
-        } catch (IOException e) {
-            log.error(e.getMessage());
-            return null;
         }
     }
 
     /**
-     * Recursively builds the Excel tree structure by adding categories as rows.
-     *
-     * @param sheet       the Excel sheet where the categories are written
-     * @param category    the current category being processed
-     * @param categoryMap the map of categories organized by parent ID
-     * @param rowIdx      the current row index in the Excel sheet
-     * @param level       the level of depth for the category in the tree
+     * A modification of a user's tree, see {@link #modifyTree(Long, TreeModification)}.
      */
-    private void buildExcelTree(Sheet sheet, Category category, Map<Long, List<Category>> categoryMap, int[] rowIdx, int level) {
-        Row row = sheet.createRow(rowIdx[0]++);
-        row.createCell(level).setCellValue(category.getName());
-
-        List<Category> children = categoryMap.get(category.getId());
+    @FunctionalInterface
+    private interface TreeModification {
+
+        /**
+         * Modifies the tree in the database.
+         *
+         * @param tree the current tree of the user
+         * @return the same modification of the cached tree, applied once the transaction commits,
+         * or null if the modification was refused
+         */
+        UnaryOperator<CategoryTree> apply(CategoryTree tree);
+    }
 
-        if (children != null && !children.isEmpty()) {
-            for (Category child : children) {
-                buildExcelTree(sheet, child, categoryMap, rowIdx, level + 1); // Уровень увеличивается на 1
-            }
+    /**
+     * Creates a file in the given format that represents the user's category tree.
+     * The categories are streamed from the database in depth-first order and written as they arrive,
+     * so neither the tree nor the query result is held in memory, whatever the size of the tree.
+     * The file is written to a temporary file, which the caller must delete once it has been sent.
+     *
+     * @param userId the ID of the user whose category tree is exported
+     * @param format the format of the file
+     * @return the path of the temporary file, or null if the file could not be created
+     */
+    @Transactional(readOnly = true)
+    public Path createExportFile(Long userId, ExportFormat format) {
+        try (Stream<CategoryRow> rows = categoryRepository.streamRowsByUserIdInTreeOrder(userId)) {
+            return exporters.get(format).exportToTempFile(rows);
+        } catch (IOException e) {
+            log.error(e.getMessage());
+            return null;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,44 @@
+package kz.nurbay.telegrambot.service;
+
+import kz.nurbay.telegrambot.model.CategoryRow;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes a category tree as plain text, one category per line, indented by four spaces per level.
+ * This is the indentation /addElements accepts, but the names are written as they are: a downloaded tree
+ * can be pasted back only into an empty tree, and only if no name contains whitespace, which /addElements
+ * reads as a separator.
+ */
+@Component
+public class CategoryTextExporter implements CategoryExporter {
+
+    private static final String INDENT = "    ";
+
+    @Override
+    public ExportFormat getFormat() {
+        return ExportFormat.TXT;
+    }
+
+    @Override
+    public void export(Stream<CategoryRow> rows, OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        for (Iterator<CategoryRow> iterator = rows.iterator(); iterator.hasNext(); ) {
+            CategoryRow category = iterator.next();
+            for (int i = 0; i < category.depth(); i++) {
+                writer.write(INDENT);
+            }
+            writer.write(category.name());
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+}
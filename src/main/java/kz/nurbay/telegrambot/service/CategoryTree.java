@@ -0,0 +1,747 @@
+package kz.nurbay.telegrambot.service;
+
+import kz.nurbay.telegrambot.model.CategoryNode;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable snapshot of a user's category tree.
+ * Children of every category are ordered by their ID, i.e. in the order they were added.
+ * Modifications produce a new snapshot, so a tree can be shared between threads without locking.
+ * <p>
+ * The tree is kept in a few primitive arrays instead of an object per category. Categories are numbered
+ * by their position in ID order; the children of every category are a slice of a single array of positions
+ * (a compressed sparse row layout), and all names are concatenated into one string. A category takes about
+ * 30 bytes besides its name, and traversals read contiguous memory. The position-based methods are meant
+ * for traversals of the whole tree, while the {@link CategoryNode} methods create nodes on demand.
+ * <p>
+ * A modification does not rebuild the arrays: it returns a tree that shares them and keeps the added, moved
+ * and removed categories beside them. {@link #findByName(String)} and {@link #getRoot()}, which is all that
+ * the checks of a modification need, take the pending changes into account directly; the position-based
+ * methods apply them in one pass the first time they are called and reuse the result, which further
+ * modifications then start from. Once more than {@value #MAX_PENDING_CHANGES} changes are pending,
+ * they are applied right away.
+ */
+public class CategoryTree {
+
+    /**
+     * The position returned for an unknown category and as the parent of the root.
+     */
+    public static final int NO_INDEX = -1;
+    /**
+     * The number of pending changes up to which a modification is only recorded.
+     */
+    static final int MAX_PENDING_CHANGES = 256;
+    private static final CategoryTree EMPTY = builder().build();
+
+    /**
+     * The IDs of all categories in ascending order; the position of an ID is the position of its category.
+     */
+    private final long[] ids;
+    /**
+     * The position of the parent of every category, or {@link #NO_INDEX} for the root.
+     */
+    private final int[] parents;
+    /**
+     * The children of category {@code i} are {@code children[childOffsets[i]]} to
+     * {@code children[childOffsets[i + 1] - 1]}, in ascending order.
+     */
+    private final int[] childOffsets;
+    private final int[] children;
+    /**
+     * The names of all categories, one after another; the name of category {@code i} starts
+     * at {@code nameOffsets[i]} and ends at {@code nameOffsets[i + 1]}.
+     */
+    private final String names;
+    private final int[] nameOffsets;
+    /**
+     * An open-addressing hash table of positions by name. If several categories share a name,
+     * only the one with the lowest ID is in the table.
+     */
+    private final int[] nameTable;
+    /**
+     * The position of the root category, or {@link #NO_INDEX} if the tree is empty.
+     */
+    private final int root;
+    /**
+     * The changes not yet applied to the arrays, or null if there are none.
+     */
+    private final Pending pending;
+    /**
+     * The tree with the pending changes applied, once it was built.
+     */
+    private volatile CategoryTree compacted;
+
+    private CategoryTree(long[] ids, int[] parents, int[] childOffsets, int[] children,
+                         String names, int[] nameOffsets, int root) {
+        this.pending = null;
+        this.compacted = this;
+        this.ids = ids;
+        this.parents = parents;
+        this.childOffsets = childOffsets;
+        this.children = children;
+        this.names = names;
+        this.nameOffsets = nameOffsets;
+        this.root = root;
+
+        this.nameTable = new int[Math.max(Integer.highestOneBit(Math.max(ids.length, 1)) << 2, 4)];
+        Arrays.fill(nameTable, NO_INDEX);
+        for (int index = 0; index < ids.length; index++) {
+            int slot = spread(nameHash(index)) & (nameTable.length - 1);
+            while (nameTable[slot] != NO_INDEX && !nameEquals(nameTable[slot], index)) {
+                slot = (slot + 1) & (nameTable.length - 1);
+            }
+            if (nameTable[slot] == NO_INDEX) {
+                nameTable[slot] = index;
+            }
+        }
+    }
+
+    /**
+     * Creates a tree that shares the arrays of the given tree and has the given pending changes.
+     */
+    private CategoryTree(CategoryTree base, Pending pending) {
+        this.ids = base.ids;
+        this.parents = base.parents;
+        this.childOffsets = base.childOffsets;
+        this.children = base.children;
+        this.names = base.names;
+        this.nameOffsets = base.nameOffsets;
+        this.nameTable = base.nameTable;
+        this.root = base.root;
+        this.pending = pending;
+    }
+
+    /**
+     * Builds a tree from the given categories.
+     *
+     * @param nodes the categories of a single user
+     * @return the category tree
+     */
+    public static CategoryTree of(Collection<CategoryNode> nodes) {
+        Builder builder = new Builder(nodes.size());
+        for (CategoryNode node : nodes) {
+            builder.add(node);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns a builder that collects categories one by one, without holding them as objects.
+     *
+     * @return a new builder
+     */
+    public static Builder builder() {
+        return new Builder(16);
+    }
+
+    /**
+     * Returns a tree without any categories.
+     *
+     * @return the empty tree
+     */
+    public static CategoryTree empty() {
+        return EMPTY;
+    }
+
+    public CategoryNode getRoot() {
+        if (pending != null) {
+            if (root != NO_INDEX && isAlive(ids[root])) {
+                // The root cannot be moved, and the arrays are read directly, so nothing is compacted
+                return new CategoryNode(ids[root], null, names.substring(nameOffsets[root], nameOffsets[root + 1]));
+            }
+            for (CategoryNode node : pending.added.values()) {
+                if (node.parentId() == null && isAlive(node.id())) {
+                    return node;
+                }
+            }
+            return null;
+        }
+        return root != NO_INDEX ? nodeAt(root) : null;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int size() {
+        return compacted().ids.length;
+    }
+
+    /**
+     * Returns the approximate number of categories, without applying the pending changes.
+     *
+     * @return the number of categories, counting removed categories as long as their removal is pending
+     */
+    int weight() {
+        return ids.length + (pending != null ? pending.added.size() : 0);
+    }
+
+    /**
+     * Returns the position of the category with the given ID.
+     *
+     * @param id the ID of the category
+     * @return the position of the category, or {@link #NO_INDEX} if the tree does not contain it
+     */
+    public int indexOf(Long id) {
+        if (pending != null) {
+            return compacted().indexOf(id);
+        }
+        if (id == null) {
+            return NO_INDEX;
+        }
+        int index = Arrays.binarySearch(ids, id);
+        return index >= 0 ? index : NO_INDEX;
+    }
+
+    /**
+     * Returns the position of the root category.
+     *
+     * @return the position of the root, or {@link #NO_INDEX} if the tree is empty
+     */
+    public int rootIndex() {
+        if (pending != null) {
+            return compacted().rootIndex();
+        }
+        return root;
+    }
+
+    public long idAt(int index) {
+        if (pending != null) {
+            return compacted().idAt(index);
+        }
+        return ids[index];
+    }
+
+    /**
+     * Returns the position of the parent of the category at the given position.
+     *
+     * @param index the position of the category
+     * @return the position of the parent, or {@link #NO_INDEX} for the root
+     */
+    public int parentAt(int index) {
+        if (pending != null) {
+            return compacted().parentAt(index);
+        }
+        return parents[index];
+    }
+
+    public int childCount(int index) {
+        if (pending != null) {
+            return compacted().childCount(index);
+        }
+        return childOffsets[index + 1] - childOffsets[index];
+    }
+
+    /**
+     * Returns the position of a child of the category at the given position.
+     *
+     * @param index    the position of the parent category
+     * @param position the number of the child among its siblings, from 0 to {@link #childCount(int)} - 1
+     * @return the position of the child
+     */
+    public int childAt(int index, int position) {
+        if (pending != null) {
+            return compacted().childAt(index, position);
+        }
+        return children[childOffsets[index] + position];
+    }
+
+    /**
+     * Returns the number of the category at the given position among the children of its parent.
+     *
+     * @param index the position of a category other than the root
+     * @return the number of the category among its siblings
+     */
+    public int positionAmongSiblings(int index) {
+        if (pending != null) {
+            return compacted().positionAmongSiblings(index);
+        }
+        int parent = parents[index];
+        return Arrays.binarySearch(children, childOffsets[parent], childOffsets[parent + 1], index)
+                - childOffsets[parent];
+    }
+
+    public String nameAt(int index) {
+        if (pending != null) {
+            return compacted().nameAt(index);
+        }
+        return names.substring(nameOffsets[index], nameOffsets[index + 1]);
+    }
+
+    public int nameLength(int index) {
+        if (pending != null) {
+            return compacted().nameLength(index);
+        }
+        return nameOffsets[index + 1] - nameOffsets[index];
+    }
+
+    /**
+     * Appends the name of the category at the given position without creating a string for it.
+     *
+     * @param index   the position of the category
+     * @param builder the builder the name is appended to
+     */
+    public void appendName(int index, StringBuilder builder) {
+        if (pending != null) {
+            compacted().appendName(index, builder);
+            return;
+        }
+        builder.append(names, nameOffsets[index], nameOffsets[index + 1]);
+    }
+
+    /**
+     * Returns the category at the given position as a node.
+     *
+     * @param index the position of the category
+     * @return a new node holding the ID, the parent ID and the name of the category
+     */
+    public CategoryNode nodeAt(int index) {
+        if (pending != null) {
+            return compacted().nodeAt(index);
+        }
+        int parent = parents[index];
+        return new CategoryNode(ids[index], parent != NO_INDEX ? ids[parent] : null, nameAt(index));
+    }
+
+    /**
+     * Finds a category by its name.
+     *
+     * @param name the name of the category
+     * @return the category with the lowest ID having the given name, or null if there is none
+     */
+    public CategoryNode findByName(String name) {
+        if (pending != null) {
+            CategoryNode found = findByNameInArrays(name);
+            if (found != null) {
+                // Another category of the arrays may share the name of a removed one, only the compacted tree knows
+                return isAlive(found.id())
+                        ? new CategoryNode(found.id(), pendingParentOf(found.id()), found.name())
+                        : compacted().findByName(name);
+            }
+            for (CategoryNode node : pending.added.values()) {
+                if (node.name().equals(name) && isAlive(node.id())) {
+                    return node;
+                }
+            }
+            return null;
+        }
+        return findByNameInArrays(name);
+    }
+
+    private CategoryNode findByNameInArrays(String name) {
+        int slot = spread(name.hashCode()) & (nameTable.length - 1);
+        while (nameTable[slot] != NO_INDEX) {
+            int index = nameTable[slot];
+            int length = nameOffsets[index + 1] - nameOffsets[index];
+            if (length == name.length() && names.regionMatches(nameOffsets[index], name, 0, name.length())) {
+                int parent = parents[index];
+                return new CategoryNode(ids[index], parent != NO_INDEX ? ids[parent] : null, name);
+            }
+            slot = (slot + 1) & (nameTable.length - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Writes the positions of the category and all its descendants in depth-first order.
+     *
+     * @param index  the position of the category
+     * @param output an array with room for every category of the tree
+     * @return the number of positions written
+     */
+    private int collectSubtree(int index, int[] output) {
+        // The stack never holds more categories than the tree has
+        int[] stack = new int[ids.length];
+        int top = 0;
+        int count = 0;
+        stack[top++] = index;
+        while (top > 0) {
+            int current = stack[--top];
+            output[count++] = current;
+            // Children are pushed in reverse, so the first child is visited first
+            for (int i = childOffsets[current + 1] - 1; i >= childOffsets[current]; i--) {
+                stack[top++] = children[i];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a tree with the given category added.
+     * If a category with the same ID is already present, the tree is returned unchanged.
+     *
+     * @param node the category to add
+     * @return the new tree
+     */
+    public CategoryTree withNode(CategoryNode node) {
+        return withNodes(List.of(node));
+    }
+
+    /**
+     * Returns a tree with the given categories added.
+     * Categories whose IDs are already present in the tree are skipped.
+     *
+     * @param added the categories to add
+     * @return the new tree
+     */
+    public CategoryTree withNodes(Collection<CategoryNode> added) {
+        CategoryTree compact = compacted;
+        if (compact != null && compact != this) {
+            CategoryTree modified = compact.withNodes(added);
+            return modified != compact ? modified : this;
+        }
+        Pending changed = null;
+        for (CategoryNode node : added) {
+            if (!contains(node.id())) {
+                if (changed == null) {
+                    changed = Pending.copyOf(pending);
+                }
+                changed.added.putIfAbsent(node.id(), node);
+            }
+        }
+        return changed != null ? withPending(changed) : this;
+    }
+
+    /**
+     * Returns a tree without the given category and all its descendants.
+     *
+     * @param id the ID of the category to remove
+     * @return the new tree, or this tree if it does not contain the category
+     */
+    public CategoryTree withoutSubtree(Long id) {
+        CategoryTree compact = compacted;
+        if (compact != null && compact != this) {
+            CategoryTree modified = compact.withoutSubtree(id);
+            return modified != compact ? modified : this;
+        }
+        if (!isAlive(id)) {
+            return this;
+        }
+        Pending changed = Pending.copyOf(pending);
+        changed.removed.add(id);
+        return withPending(changed);
+    }
+
+    /**
+     * Returns a tree with the given category, together with its descendants, moved under a new parent.
+     *
+     * @param id       the ID of the category to move
+     * @param parentId the ID of the new parent
+     * @return the new tree, or this tree if one of the categories is not part of it
+     */
+    public CategoryTree withParent(Long id, Long parentId) {
+        CategoryTree compact = compacted;
+        if (compact != null && compact != this) {
+            CategoryTree modified = compact.withParent(id, parentId);
+            return modified != compact ? modified : this;
+        }
+        if (!isAlive(id) || !isAlive(parentId)) {
+            return this;
+        }
+        Pending changed = Pending.copyOf(pending);
+        CategoryNode added = changed.added.get(id);
+        if (added != null) {
+            changed.added.put(id, new CategoryNode(id, parentId, added.name()));
+        } else {
+            changed.moved.put(id, parentId);
+        }
+        return withPending(changed);
+    }
+
+    private CategoryTree withPending(Pending changed) {
+        CategoryTree tree = new CategoryTree(this, changed);
+        return changed.size() > MAX_PENDING_CHANGES ? tree.compacted() : tree;
+    }
+
+    /**
+     * Returns the tree with the pending changes applied, building it the first time.
+     */
+    private CategoryTree compacted() {
+        CategoryTree tree = compacted;
+        if (tree == null) {
+            tree = compact();
+            compacted = tree;
+        }
+        return tree;
+    }
+
+    /**
+     * Applies the pending changes: copies the categories with their current parents, adds the new ones
+     * and drops the removed subtrees, as they are in the resulting tree.
+     */
+    private CategoryTree compact() {
+        Builder builder = new Builder(ids.length + pending.added.size());
+        for (int index = 0; index < ids.length; index++) {
+            Long movedTo = pending.moved.get(ids[index]);
+            if (movedTo != null) {
+                builder.add(ids[index], movedTo, names, nameOffsets[index], nameOffsets[index + 1]);
+            } else {
+                copyTo(builder, index);
+            }
+        }
+        for (CategoryNode node : pending.added.values()) {
+            builder.add(node);
+        }
+        CategoryTree tree = builder.build();
+        return pending.removed.isEmpty() ? tree : tree.withoutSubtrees(pending.removed);
+    }
+
+    /**
+     * Rebuilds the tree without the given categories and their descendants.
+     * Must be called on a tree without pending changes.
+     */
+    private CategoryTree withoutSubtrees(Set<Long> removedIds) {
+        boolean[] removed = new boolean[ids.length];
+        int[] subtree = new int[ids.length];
+        int removedCount = 0;
+        for (Long id : removedIds) {
+            int index = indexOf(id);
+            if (index == NO_INDEX || removed[index]) {
+                continue;
+            }
+            int count = collectSubtree(index, subtree);
+            for (int i = 0; i < count; i++) {
+                if (!removed[subtree[i]]) {
+                    removed[subtree[i]] = true;
+                    removedCount++;
+                }
+            }
+        }
+
+        Builder builder = new Builder(ids.length - removedCount);
+        for (int i = 0; i < ids.length; i++) {
+            if (!removed[i]) {
+                copyTo(builder, i);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Checks if the tree has a category with the given ID, counting categories whose removal is pending.
+     */
+    private boolean contains(Long id) {
+        return id != null && (Arrays.binarySearch(ids, id) >= 0 || pending != null && pending.added.containsKey(id));
+    }
+
+    /**
+     * Checks if the tree has a category with the given ID that is not removed by a pending change,
+     * i.e. neither it nor one of its ancestors is removed.
+     */
+    private boolean isAlive(Long id) {
+        if (!contains(id)) {
+            return false;
+        }
+        if (pending == null || pending.removed.isEmpty()) {
+            return true;
+        }
+        // The walk cannot be longer than the number of categories, unless the parents form a cycle
+        int steps = ids.length + pending.added.size();
+        for (Long current = id; current != null; current = pendingParentOf(current)) {
+            if (pending.removed.contains(current) || steps-- == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the ID of the parent of a category of the tree, taking pending changes into account.
+     */
+    private Long pendingParentOf(Long id) {
+        if (pending.moved.containsKey(id)) {
+            return pending.moved.get(id);
+        }
+        CategoryNode added = pending.added.get(id);
+        if (added != null) {
+            return added.parentId();
+        }
+        int index = Arrays.binarySearch(ids, id);
+        return index >= 0 && parents[index] != NO_INDEX ? ids[parents[index]] : null;
+    }
+
+    private void copyTo(Builder builder, int index) {
+        int parent = parents[index];
+        builder.add(ids[index], parent != NO_INDEX ? ids[parent] : Builder.NO_PARENT,
+                names, nameOffsets[index], nameOffsets[index + 1]);
+    }
+
+    /**
+     * Computes the hash of a stored name the same way {@link String#hashCode()} does,
+     * so that stored names can be found by the hash of a string.
+     */
+    private int nameHash(int index) {
+        int hash = 0;
+        for (int i = nameOffsets[index]; i < nameOffsets[index + 1]; i++) {
+            hash = 31 * hash + names.charAt(i);
+        }
+        return hash;
+    }
+
+    private boolean nameEquals(int first, int second) {
+        int length = nameLength(first);
+        return length == nameLength(second)
+                && names.regionMatches(nameOffsets[first], names, nameOffsets[second], length);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * The changes of a tree that are not applied to its arrays yet. A tree never changes its pending
+     * changes; a modification copies them, which is cheap as long as there are few.
+     */
+    private static final class Pending {
+
+        /**
+         * The added categories in the order they were added, with their current parents.
+         */
+        private final Map<Long, CategoryNode> added;
+        /**
+         * The new parents of moved categories of the arrays.
+         */
+        private final Map<Long, Long> moved;
+        private final Set<Long> removed;
+
+        private Pending(Map<Long, CategoryNode> added, Map<Long, Long> moved, Set<Long> removed) {
+            this.added = added;
+            this.moved = moved;
+            this.removed = removed;
+        }
+
+        static Pending copyOf(Pending pending) {
+            return pending == null
+                    ? new Pending(new LinkedHashMap<>(), new HashMap<>(), new HashSet<>())
+                    : new Pending(new LinkedHashMap<>(pending.added), new HashMap<>(pending.moved),
+                    new HashSet<>(pending.removed));
+        }
+
+        int size() {
+            return added.size() + moved.size() + removed.size();
+        }
+    }
+
+    /**
+     * Collects categories in any order into growing primitive arrays and builds the tree from them.
+     * If several categories have the same ID, the first one added is kept. A category whose parent
+     * is not added is kept, but is not reachable from the root.
+     */
+    public static final class Builder {
+
+        private static final long NO_PARENT = Long.MIN_VALUE;
+
+        private long[] ids;
+        private long[] parentIds;
+        private int[] nameOffsets;
+        private final StringBuilder names = new StringBuilder();
+        private int size;
+
+        private Builder(int capacity) {
+            capacity = Math.max(capacity, 1);
+            this.ids = new long[capacity];
+            this.parentIds = new long[capacity];
+            this.nameOffsets = new int[capacity + 1];
+        }
+
+        /**
+         * Adds a category.
+         *
+         * @param node the category to add
+         * @return this builder
+         */
+        public Builder add(CategoryNode node) {
+            String name = node.name() != null ? node.name() : "";
+            long parentId = node.parentId() != null ? node.parentId() : NO_PARENT;
+            return add(node.id(), parentId, name, 0, name.length());
+        }
+
+        private Builder add(long id, long parentId, CharSequence source, int start, int end) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                parentIds = Arrays.copyOf(parentIds, capacity);
+                nameOffsets = Arrays.copyOf(nameOffsets, capacity + 1);
+            }
+            ids[size] = id;
+            parentIds[size] = parentId;
+            names.append(source, start, end);
+            nameOffsets[++size] = names.length();
+            return this;
+        }
+
+        /**
+         * Builds the tree from the categories added so far.
+         *
+         * @return the category tree
+         */
+        public CategoryTree build() {
+            long[] sortedIds = Arrays.copyOf(ids, size);
+            Arrays.sort(sortedIds);
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (count == 0 || sortedIds[i] != sortedIds[count - 1]) {
+                    sortedIds[count++] = sortedIds[i];
+                }
+            }
+            if (count < size) {
+                sortedIds = Arrays.copyOf(sortedIds, count);
+            }
+
+            // The position in the builder of the category at every position of the tree
+            int[] source = new int[count];
+            Arrays.fill(source, NO_INDEX);
+            for (int i = 0; i < size; i++) {
+                int index = Arrays.binarySearch(sortedIds, ids[i]);
+                if (source[index] == NO_INDEX) {
+                    source[index] = i;
+                }
+            }
+
+            int root = NO_INDEX;
+            int[] parents = new int[count];
+            int[] childOffsets = new int[count + 1];
+            for (int index = 0; index < count; index++) {
+                long parentId = parentIds[source[index]];
+                if (parentId == NO_PARENT) {
+                    parents[index] = NO_INDEX;
+                    root = index;
+                } else {
+                    int parent = Arrays.binarySearch(sortedIds, parentId);
+                    parents[index] = parent >= 0 ? parent : NO_INDEX;
+                    if (parent >= 0) {
+                        childOffsets[parent + 1]++;
+                    }
+                }
+            }
+            for (int index = 0; index < count; index++) {
+                childOffsets[index + 1] += childOffsets[index];
+            }
+
+            // Categories are visited in ID order, so the children of every category end up ordered by ID
+            int[] children = new int[childOffsets[count]];
+            int[] next = Arrays.copyOf(childOffsets, count);
+            StringBuilder sortedNames = new StringBuilder(names.length());
+            int[] sortedNameOffsets = new int[count + 1];
+            for (int index = 0; index < count; index++) {
+                if (parents[index] != NO_INDEX) {
+                    children[next[parents[index]]++] = index;
+                }
+                int i = source[index];
+                sortedNames.append(names, nameOffsets[i], nameOffsets[i + 1]);
+                sortedNameOffsets[index + 1] = sortedNames.length();
+            }
+
+            return new CategoryTree(sortedIds, parents, childOffsets, children,
+                    sortedNames.toString(), sortedNameOffsets, root);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package kz.nurbay.telegrambot.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * A bounded in-memory cache of users' category trees.
+ * The cache is limited by the total number of cached categories and drops trees that were not accessed
+ * for a while. Writes to the database are applied to the cached tree as well, so a cached tree always
+ * reflects the current state of the database.
+ */
+@Component
+public class CategoryTreeCache implements MeterBinder {
+
+    private final Cache<Long, CategoryTree> cache;
+
+    public CategoryTreeCache(@Value("${category.tree-cache.maximum-nodes:1000000}") long maximumNodes,
+                             @Value("${category.tree-cache.expire-after-access:30m}") Duration expireAfterAccess) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumNodes)
+                .weigher((Long userId, CategoryTree tree) -> tree.weight() + 1)
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached tree of the user, loading it if it is not cached yet.
+     *
+     * @param userId the ID of the user
+     * @param loader the function that loads the tree from the database
+     * @return the category tree of the user
+     */
+    public CategoryTree get(Long userId, Function<Long, CategoryTree> loader) {
+        return cache.get(userId, loader);
+    }
+
+    /**
+     * Returns the cached tree of the user without loading it.
+     *
+     * @param userId the ID of the user
+     * @return the cached tree, or null if the tree is not cached
+     */
+    public CategoryTree getIfPresent(Long userId) {
+        return cache.getIfPresent(userId);
+    }
+
+    /**
+     * Applies a modification to the cached tree of the user. Does nothing if the tree is not cached.
+     *
+     * @param userId the ID of the user
+     * @param update the modification to apply
+     */
+    public void update(Long userId, UnaryOperator<CategoryTree> update) {
+        cache.asMap().computeIfPresent(userId, (key, tree) -> update.apply(tree));
+    }
+
+    /**
+     * Removes the tree of the user from the cache.
+     *
+     * @param userId the ID of the user
+     */
+    public void invalidate(Long userId) {
+        cache.invalidate(userId);
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts of the cache.
+     *
+     * @return a snapshot of the cache statistics
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Publishes the size, hit, miss and eviction metrics of the cache as the "category.tree" cache.
+     *
+     * @param registry the registry to publish the metrics to
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "category.tree");
+    }
+}
@@ -0,0 +1,148 @@
+package kz.nurbay.telegrambot.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Renders a category tree as text, one category per line in depth-first order:
+ * <pre>
+ * root
+ *     ├── child
+ *     │   └── grandchild
+ *     └── child
+ * </pre>
+ * Rendering can start at any category, so a page of a large tree is rendered
+ * without rendering the lines before it. The traversal uses an explicit stack and a single prefix buffer
+ * that grows and shrinks with the depth, so neither the depth of the tree nor the length of the prefixes
+ * is limited by the thread's stack or causes repeated copying.
+ */
+public final class CategoryTreeRenderer {
+
+    private static final String BRANCH = "├── ";
+    private static final String LAST_BRANCH = "└── ";
+    private static final String PIPE = "│   ";
+    private static final String SPACE = "    ";
+    private static final char ELLIPSIS = '…';
+    private static final int INDENT = 4;
+
+    private CategoryTreeRenderer() {
+    }
+
+    /**
+     * Renders lines of the tree starting at the given category, until the line or character limit is reached.
+     *
+     * @param tree     the category tree to render
+     * @param startId  the ID of the first category to render
+     * @param maxLines the maximum number of lines to render
+     * @param maxChars the maximum number of characters to render; at least one line is always rendered
+     * @param builder  the builder the lines are appended to
+     * @return the ID of the category following the last rendered line, or null if the tree was rendered to its end
+     */
+    public static Long render(CategoryTree tree, Long startId, int maxLines, int maxChars, StringBuilder builder) {
+        int start = tree.indexOf(startId);
+        StringBuilder prefix = new StringBuilder();
+        Deque<Level> stack = new ArrayDeque<>();
+        int lines = 0;
+        int chars = 0;
+
+        if (tree.parentAt(start) == CategoryTree.NO_INDEX) {
+            tree.appendName(start, builder);
+            builder.append('\n');
+            lines++;
+            chars += tree.nameLength(start) + 1;
+            pushChildren(tree, start, true, stack, prefix);
+        } else {
+            restorePosition(tree, start, stack, prefix);
+        }
+
+        while (!stack.isEmpty()) {
+            Level level = stack.peek();
+            int childCount = tree.childCount(level.parent);
+            if (level.position == childCount) {
+                stack.pop();
+                prefix.setLength(stack.size() * INDENT);
+                continue;
+            }
+
+            int node = tree.childAt(level.parent, level.position);
+            boolean isLast = level.position == childCount - 1;
+            int nameLength = tree.nameLength(node);
+            // In a very deep tree the prefix alone can exceed the limit, then only its end is shown
+            int prefixLength = Math.min(prefix.length(), Math.max(maxChars - INDENT - nameLength - 2, 0));
+            boolean elided = prefixLength < prefix.length();
+            int length = (elided ? 1 : 0) + prefixLength + INDENT + nameLength + 1;
+            if (lines == maxLines || (lines > 0 && chars + length > maxChars)) {
+                return tree.idAt(node);
+            }
+
+            if (elided) {
+                builder.append(ELLIPSIS);
+            }
+            builder.append(prefix, prefix.length() - prefixLength, prefix.length())
+                    .append(isLast ? LAST_BRANCH : BRANCH);
+            tree.appendName(node, builder);
+            builder.append('\n');
+            lines++;
+            chars += length;
+            level.position++;
+            pushChildren(tree, node, isLast, stack, prefix);
+        }
+        return null;
+    }
+
+    /**
+     * Descends into the children of the category, if it has any.
+     */
+    private static void pushChildren(CategoryTree tree, int node, boolean isLast,
+                                     Deque<Level> stack, StringBuilder prefix) {
+        if (tree.childCount(node) > 0) {
+            // The root is drawn like a last child, so its children are indented without a pipe
+            prefix.append(isLast || tree.parentAt(node) == CategoryTree.NO_INDEX ? SPACE : PIPE);
+            stack.push(new Level(node, 0));
+        }
+    }
+
+    /**
+     * Rebuilds the traversal state as it is right before the given category is rendered,
+     * by walking up from the category to the root.
+     */
+    private static void restorePosition(CategoryTree tree, int start, Deque<Level> stack, StringBuilder prefix) {
+        int depth = 0;
+        for (int node = start; tree.parentAt(node) != CategoryTree.NO_INDEX; node = tree.parentAt(node)) {
+            depth++;
+        }
+        int[] ancestors = new int[depth];
+        int node = start;
+        for (int i = 0; i < depth; i++) {
+            ancestors[i] = node;
+            node = tree.parentAt(node);
+        }
+
+        // Ancestors are iterated from the child of the root down to the start category
+        prefix.append(SPACE);
+        for (int i = depth - 1; i >= 0; i--) {
+            int parent = tree.parentAt(ancestors[i]);
+            int position = tree.positionAmongSiblings(ancestors[i]);
+            if (i > 0) {
+                // The ancestor itself was rendered on an earlier page, continue with its next sibling
+                stack.push(new Level(parent, position + 1));
+                prefix.append(position == tree.childCount(parent) - 1 ? SPACE : PIPE);
+            } else {
+                stack.push(new Level(parent, position));
+            }
+        }
+    }
+
+    /**
+     * A category whose children are being rendered and the number of the next child to render.
+     */
+    private static final class Level {
+        private final int parent;
+        private int position;
+
+        private Level(int parent, int position) {
+            this.parent = parent;
+            this.position = position;
+        }
+    }
+}
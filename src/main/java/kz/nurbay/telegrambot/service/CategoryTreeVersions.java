@@ -0,0 +1,133 @@
+package kz.nurbay.telegrambot.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import kz.nurbay.telegrambot.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps track of the version of each user's category tree.
+ * The version is stored with the user in the database and incremented with a compare-and-set by every
+ * modification of the tree, so concurrent modifications, also by other instances of the bot, detect each other
+ * without holding a lock. This instance keeps the version its cached tree corresponds to, so anything derived
+ * from the tree (e.g. the rendered tree) can be cached against the version and reused while it is unchanged.
+ * The known versions are a bounded cache; a version that is not cached is read from the database again,
+ * so a version never goes back and something cached against an old version is never reused.
+ */
+@Component
+public class CategoryTreeVersions implements MeterBinder {
+
+    private final UserRepository userRepository;
+    private final CategoryTreeCache categoryTreeCache;
+    private final Cache<Long, Long> versions;
+
+    public CategoryTreeVersions(UserRepository userRepository, CategoryTreeCache categoryTreeCache,
+                                @Value("${category.tree-versions.maximum-size:100000}") long maximumSize,
+                                @Value("${category.tree-versions.expire-after-access:30m}") Duration expireAfterAccess) {
+        this.userRepository = userRepository;
+        this.categoryTreeCache = categoryTreeCache;
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the version of the user's tree known to this instance, reading it from the database
+     * only if this instance does not know it. The cached tree is dropped when the version is read,
+     * because it may have been cached before a modification by another instance.
+     *
+     * @param userId the ID of the user
+     * @return the version of the tree, or 0 if the user does not exist
+     */
+    public long get(Long userId) {
+        Long version = versions.get(userId, id -> {
+            categoryTreeCache.invalidate(id);
+            return userRepository.findTreeVersionById(id);
+        });
+        return version != null ? version : 0;
+    }
+
+    /**
+     * Forgets the version of the user's tree and the cached tree, after a compare-and-set showed that
+     * the tree was modified past this instance. Both are read from the database again when they are needed.
+     *
+     * @param userId the ID of the user
+     */
+    public void forget(Long userId) {
+        versions.invalidate(userId);
+        categoryTreeCache.invalidate(userId);
+    }
+
+    /**
+     * Reads the version of the user's tree from the database, for modifications that check the tree
+     * in the database rather than the cached tree.
+     * If the tree was modified past this instance, e.g. by another instance of the bot, the cached tree is dropped.
+     *
+     * @param userId the ID of the user
+     * @return the version of the tree in the database
+     * @throws RuntimeException if the user does not exist
+     */
+    public long read(Long userId) {
+        Long version = userRepository.findTreeVersionById(userId);
+        if (version == null) {
+            throw new RuntimeException("User with ID " + userId + " not found");
+        }
+        Long known = versions.getIfPresent(userId);
+        if (!version.equals(known)) {
+            categoryTreeCache.invalidate(userId);
+            versions.put(userId, version);
+        }
+        return version;
+    }
+
+    /**
+     * Increments the version of the user's tree in the database if it is still the given version, as returned by
+     * {@link #get(Long)} or {@link #read(Long)}. The user's row stays locked until
+     * the transaction ends, so a concurrent compare-and-set waits for it and then fails. Once the transaction
+     * commits, the modification is applied to the cached tree and the version known to this instance is incremented.
+     *
+     * @param userId  the ID of the user whose tree was modified
+     * @param version the version the modification is checked against
+     * @param update  the modification to apply to the cached tree, or null to drop the cached tree;
+     *                it is called after the commit, so it may use IDs generated later in the transaction
+     * @throws TreeVersionConflictException if the tree was modified by another transaction in the meantime
+     */
+    public void compareAndIncrement(Long userId, long version, UnaryOperator<CategoryTree> update) {
+        if (userRepository.incrementTreeVersion(userId, version) == 0) {
+            throw new TreeVersionConflictException(userId, version);
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                if (update != null) {
+                    categoryTreeCache.update(userId, update);
+                } else {
+                    categoryTreeCache.invalidate(userId);
+                }
+                versions.asMap().merge(userId, version + 1, Math::max);
+            }
+        });
+    }
+
+    /**
+     * Publishes the size, hit, miss and eviction metrics of the known versions as the "category.tree-version" cache.
+     *
+     * @param registry the registry to publish the metrics to
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, versions, "category.tree-version");
+    }
+}
@@ -0,0 +1,37 @@
+package kz.nurbay.telegrambot.service;
+
+/**
+ * The formats a category tree can be downloaded in.
+ */
+public enum ExportFormat {
+
+    XLSX("xlsx"),
+    CSV("csv"),
+    JSON("json"),
+    TXT("txt");
+
+    private final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Finds the format with the given file extension.
+     *
+     * @param extension the file extension, in any case
+     * @return the format, or null if there is no format with this extension
+     */
+    public static ExportFormat fromExtension(String extension) {
+        for (ExportFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(extension)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
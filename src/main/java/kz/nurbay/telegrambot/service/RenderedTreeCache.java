@@ -0,0 +1,169 @@
+package kz.nurbay.telegrambot.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of users' rendered tree pages.
+ * For every user it keeps the pages rendered so far and the IDs of the categories the known pages start with,
+ * together with the version of the tree they were rendered from. Pages are only returned while the tree
+ * still has that version; rendering a newer version discards everything rendered from the older one.
+ */
+@Component
+public class RenderedTreeCache implements MeterBinder {
+
+    private final Cache<Long, RenderedTree> cache;
+
+    public RenderedTreeCache(@Value("${category.rendered-tree-cache.maximum-chars:50000000}") long maximumChars,
+                             @Value("${category.rendered-tree-cache.expire-after-access:30m}") Duration expireAfterAccess) {
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maximumChars)
+                .weigher((Long userId, RenderedTree rendered) -> rendered.weight())
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns a rendered page of the user's tree if it was rendered from the given version of the tree.
+     *
+     * @param userId  the ID of the user
+     * @param version the current version of the user's tree
+     * @param page    the number of the page, starting from 0
+     * @return the rendered page, or null if it is not cached or is outdated
+     */
+    public RenderedPage getPage(Long userId, long version, int page) {
+        RenderedTree rendered = cache.getIfPresent(userId);
+        return rendered != null && rendered.version == version ? rendered.getPage(page) : null;
+    }
+
+    /**
+     * Returns the known page closest to the given page, i.e. the page itself or the last known page before it,
+     * from which the requested page can be rendered.
+     *
+     * @param userId  the ID of the user
+     * @param version the current version of the user's tree
+     * @param page    the number of the requested page
+     * @return the number of the known page and the ID of the category it starts with,
+     * or null if nothing was rendered from this version
+     */
+    public PageStart getPageStart(Long userId, long version, int page) {
+        RenderedTree rendered = cache.getIfPresent(userId);
+        return rendered != null && rendered.version == version ? rendered.getPageStart(page) : null;
+    }
+
+    /**
+     * Stores a rendered page of the user's tree.
+     *
+     * @param userId  the ID of the user
+     * @param version the version of the tree the page was rendered from
+     * @param page    the number of the page
+     * @param startId the ID of the category the page starts with
+     * @param nextId  the ID of the category the next page starts with, or null if this is the last page
+     * @param text    the rendered page
+     */
+    public void putPage(Long userId, long version, int page, Long startId, Long nextId, String text) {
+        // The pages of a version are added in place, the entry is only replaced when the version changes;
+        // returning it from compute makes the cache weigh it again
+        cache.asMap().compute(userId, (key, rendered) -> {
+            if (rendered != null && rendered.version > version) {
+                return rendered;
+            }
+            if (rendered == null || rendered.version != version) {
+                rendered = new RenderedTree(version);
+            }
+            rendered.putPage(page, startId, nextId, new RenderedPage(text, nextId != null));
+            return rendered;
+        });
+    }
+
+    /**
+     * Publishes the size, hit, miss and eviction metrics of the cache as the "category.rendered-tree" cache.
+     *
+     * @param registry the registry to publish the metrics to
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "category.rendered-tree");
+    }
+
+    /**
+     * A rendered page of a tree.
+     *
+     * @param text    the rendered lines of the page
+     * @param hasNext whether the tree continues on the next page
+     */
+    public record RenderedPage(String text, boolean hasNext) {
+    }
+
+    /**
+     * A known page of a tree.
+     *
+     * @param page    the number of the page
+     * @param startId the ID of the category the page starts with
+     */
+    public record PageStart(int page, Long startId) {
+    }
+
+    /**
+     * The pages rendered from one version of a user's tree. Changes are made inside {@link Map#compute}
+     * of the cache while reads may happen concurrently, so both are synchronized.
+     */
+    private static final class RenderedTree {
+
+        private final long version;
+        private final List<Long> pageStarts = new ArrayList<>();
+        private final Map<Integer, RenderedPage> pages = new HashMap<>();
+        private int weight;
+
+        private RenderedTree(long version) {
+            this.version = version;
+        }
+
+        synchronized RenderedPage getPage(int page) {
+            return pages.get(page);
+        }
+
+        synchronized PageStart getPageStart(int page) {
+            if (pageStarts.isEmpty()) {
+                return null;
+            }
+            int known = Math.min(page, pageStarts.size() - 1);
+            return new PageStart(known, pageStarts.get(known));
+        }
+
+        synchronized void putPage(int page, Long startId, Long nextId, RenderedPage rendered) {
+            setPageStart(page, startId);
+            if (nextId != null) {
+                setPageStart(page + 1, nextId);
+            }
+            RenderedPage previous = pages.put(page, rendered);
+            weight += rendered.text().length() - (previous != null ? previous.text().length() : 0);
+        }
+
+        private void setPageStart(int page, Long startId) {
+            // Pages are rendered in order from a known start, so a page is at most one past the known ones
+            if (page < pageStarts.size()) {
+                pageStarts.set(page, startId);
+            } else if (page == pageStarts.size()) {
+                pageStarts.add(startId);
+                weight++;
+            }
+        }
+
+        synchronized int weight() {
+            return weight;
+        }
+    }
+}
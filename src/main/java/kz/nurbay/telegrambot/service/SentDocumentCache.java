@@ -0,0 +1,85 @@
+package kz.nurbay.telegrambot.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * A bounded cache of the Telegram file IDs of downloaded trees.
+ * Telegram keeps every sent document and returns a file ID for it, by which the same document can be sent again
+ * without uploading it. For every user and format the cache keeps the file ID of the last sent document
+ * together with the version of the tree it was generated from, and returns it only while the tree
+ * still has that version.
+ */
+@Component
+public class SentDocumentCache implements MeterBinder {
+
+    private final Cache<Key, SentDocument> cache;
+
+    public SentDocumentCache(@Value("${category.sent-document-cache.maximum-size:100000}") long maximumSize,
+                             @Value("${category.sent-document-cache.expire-after-access:24h}") Duration expireAfterAccess) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(expireAfterAccess)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the file ID of the document sent for the given version of the user's tree.
+     *
+     * @param userId  the ID of the user
+     * @param format  the format of the document
+     * @param version the current version of the user's tree
+     * @return the file ID, or null if no document was sent for this version
+     */
+    public String getFileId(Long userId, ExportFormat format, long version) {
+        SentDocument sent = cache.getIfPresent(new Key(userId, format));
+        return sent != null && sent.version() == version ? sent.fileId() : null;
+    }
+
+    /**
+     * Remembers the file ID of a sent document. A document of an older version than the remembered one is ignored.
+     *
+     * @param userId  the ID of the user
+     * @param format  the format of the document
+     * @param version the version of the tree the document was generated from
+     * @param fileId  the file ID Telegram returned for the document
+     */
+    public void put(Long userId, ExportFormat format, long version, String fileId) {
+        cache.asMap().merge(new Key(userId, format), new SentDocument(version, fileId),
+                (current, sent) -> current.version() > sent.version() ? current : sent);
+    }
+
+    /**
+     * Forgets the file ID of the user's document, e.g. after Telegram refused to send it again.
+     *
+     * @param userId the ID of the user
+     * @param format the format of the document
+     */
+    public void invalidate(Long userId, ExportFormat format) {
+        cache.invalidate(new Key(userId, format));
+    }
+
+    /**
+     * Publishes the size, hit, miss and eviction metrics of the cache as the "category.sent-document" cache.
+     *
+     * @param registry the registry to publish the metrics to
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "category.sent-document");
+    }
+
+    private record Key(Long userId, ExportFormat format) {
+    }
+
+    private record SentDocument(long version, String fileId) {
+    }
+}
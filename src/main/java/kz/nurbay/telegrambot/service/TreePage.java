@@ -0,0 +1,12 @@
+package kz.nurbay.telegrambot.service;
+
+/**
+ * A page of a user's rendered category tree.
+ *
+ * @param version the version of the tree the page was rendered from
+ * @param number  the number of the page, starting from 0
+ * @param text    the rendered page, formatted as a Markdown code block
+ * @param hasNext whether the tree continues on the next page
+ */
+public record TreePage(long version, int number, String text, boolean hasNext) {
+}
@@ -0,0 +1,13 @@
+package kz.nurbay.telegrambot.service;
+
+/**
+ * Thrown when a modification of a category tree cannot be committed, because the tree was modified
+ * by another transaction after the modification read its version. The modification is rolled back
+ * and can be retried against the current tree.
+ */
+public class TreeVersionConflictException extends RuntimeException {
+
+    public TreeVersionConflictException(Long userId, long version) {
+        super("Category tree of user " + userId + " was modified after version " + version);
+    }
+}
@@ -1,30 +1,65 @@
 package kz.nurbay.telegrambot.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import kz.nurbay.telegrambot.model.User;
 import kz.nurbay.telegrambot.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+/**
+ * Registers users and provides references to them for the entities they own.
+ * Users are never deleted by the bot, so once a user is known to exist, the fact is kept in a bounded
+ * in-memory set and the database is not asked again.
+ */
 @Service
 public class UserService {
 
     private final UserRepository userRepository;
+    /**
+     * The IDs of users known to exist in the database.
+     */
+    private final Cache<Long, Boolean> knownUsers;
 
     @Autowired
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository,
+                       @Value("${user.known-users.maximum-size:100000}") long knownUsersMaximumSize) {
         this.userRepository = userRepository;
+        this.knownUsers = Caffeine.newBuilder()
+                .maximumSize(knownUsersMaximumSize)
+                .build();
     }
 
     /**
      * Creates a new user in the system if the user with the specified ID does not already exist.
+     * The user is inserted with a single idempotent statement, and nothing is sent to the database
+     * for a user already known to exist.
      *
      * @param userId the ID of the user to check and create if necessary
      */
     public void createUserIfNotExists(Long userId) {
-        if (!userRepository.existsById(userId)) {
-            User newUser = new User();
-            newUser.setId(userId);
-            userRepository.save(newUser);
+        if (knownUsers.getIfPresent(userId) == null) {
+            userRepository.insertIfNotExists(userId);
+            knownUsers.put(userId, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Returns a reference to the user for setting as the owner of an entity.
+     * The reference is not loaded from the database; only the existence of a user not known yet is checked.
+     *
+     * @param userId the ID of the user
+     * @return a reference to the user
+     * @throws RuntimeException if the user does not exist
+     */
+    public User getReference(Long userId) {
+        if (knownUsers.getIfPresent(userId) == null) {
+            if (!userRepository.existsById(userId)) {
+                throw new RuntimeException("User with ID " + userId + " not found");
+            }
+            knownUsers.put(userId, Boolean.TRUE);
         }
+        return userRepository.getReferenceById(userId);
     }
 }
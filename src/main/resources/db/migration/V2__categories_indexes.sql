@@ -0,0 +1,28 @@
+-- Indexes for the category lookups, and the per-user uniqueness the bot relies on:
+-- one root per user and unique category names per user.
+-- Existing data is not changed: if a user already has several roots or duplicate names,
+-- the migration fails and names the conflicts, which must be resolved by hand before it is run again.
+DO $$
+DECLARE
+    extra_roots BIGINT;
+    duplicate_names BIGINT;
+BEGIN
+    SELECT count(*) - count(DISTINCT user_id) INTO extra_roots FROM categories WHERE parent_id IS NULL;
+    SELECT count(*) - count(DISTINCT (user_id, name)) INTO duplicate_names FROM categories;
+    IF extra_roots > 0 OR duplicate_names > 0 THEN
+        RAISE EXCEPTION 'categories violate the per-user uniqueness: % extra root(s), % duplicate name(s)',
+            extra_roots, duplicate_names
+            USING HINT = 'Give each user a single root and unique category names, then run the migration again.';
+    END IF;
+END
+$$;
+
+-- Children of a category (subtree queries and ON DELETE CASCADE of fk_parent_category)
+CREATE INDEX idx_categories_parent ON categories (parent_id);
+
+-- Only one root per user (existsByUserIdAndParentIsNull)
+CREATE UNIQUE INDEX uq_categories_user_root ON categories (user_id) WHERE parent_id IS NULL;
+
+-- Category names are unique per user (name lookups); its user_id prefix also answers
+-- the lookups of all categories of a user
+CREATE UNIQUE INDEX uq_categories_user_name ON categories (user_id, name);
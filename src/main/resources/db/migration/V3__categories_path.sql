@@ -0,0 +1,32 @@
+-- Materialized path: the IDs of all ancestors of a category, from the root down to the category itself.
+-- Descendants of a category are the rows whose path contains its ID, and sorting by path lists
+-- a tree in depth-first order with siblings ordered by ID.
+ALTER TABLE categories ADD COLUMN path BIGINT[];
+
+WITH RECURSIVE tree AS (
+    SELECT id, ARRAY[id] AS path FROM categories WHERE parent_id IS NULL
+    UNION ALL
+    SELECT c.id, t.path || c.id FROM categories c JOIN tree t ON c.parent_id = t.id
+)
+UPDATE categories c SET path = tree.path FROM tree WHERE c.id = tree.id;
+
+ALTER TABLE categories ALTER COLUMN path SET NOT NULL;
+
+-- The path is derived from the parent's path when a category is inserted
+CREATE FUNCTION categories_set_path() RETURNS trigger AS $$
+BEGIN
+    IF NEW.parent_id IS NULL THEN
+        NEW.path := ARRAY[NEW.id];
+    ELSE
+        SELECT path || NEW.id INTO NEW.path FROM categories WHERE id = NEW.parent_id;
+    END IF;
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_categories_set_path
+    BEFORE INSERT ON categories
+    FOR EACH ROW EXECUTE FUNCTION categories_set_path();
+
+-- Subtree lookups (path @> ARRAY[id])
+CREATE INDEX idx_categories_path ON categories USING GIN (path);
@@ -0,0 +1,3 @@
+-- Category IDs are allocated by the application in blocks of 100 (pooled sequence generator),
+-- which allows inserts to be sent to the database in JDBC batches.
+ALTER SEQUENCE categories_id_seq INCREMENT BY 100;
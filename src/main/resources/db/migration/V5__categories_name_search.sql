@@ -0,0 +1,7 @@
+-- Substring and fuzzy search over category names (/find).
+-- pg_trgm indexes the trigrams of every name, so ILIKE '%text%' and similarity (%) are answered from the index
+-- and combined with the user index, instead of reading every category of the user.
+-- Trigrams are built from letters and digits as the database locale classifies them.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX idx_categories_name_trgm ON categories USING GIN (name gin_trgm_ops);
@@ -0,0 +1,4 @@
+-- The version of the user's category tree, incremented with a compare-and-set by every modification of the tree.
+-- A modification commits only if the version is still the one it read, so concurrent writers of the same tree
+-- detect each other and retry instead of holding a lock.
+ALTER TABLE users ADD COLUMN tree_version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,285 @@
+package kz.nurbay.telegrambot;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import kz.nurbay.telegrambot.bot.UpdateShardRouter;
+import kz.nurbay.telegrambot.model.User;
+import kz.nurbay.telegrambot.repository.UserRepository;
+import kz.nurbay.telegrambot.service.CategoryService;
+import kz.nurbay.telegrambot.service.CategoryTreeCache;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * Runs two instances of the bot as two shards against the same database.
+ */
+class MultiInstanceTest {
+
+    private static final Long USER_ID = -3L;
+    private static final String SECRET_TOKEN = "test-secret";
+
+    private static ConfigurableApplicationContext first;
+    private static ConfigurableApplicationContext second;
+    private static int firstPort;
+
+    @BeforeAll
+    static void startInstances() throws IOException {
+        firstPort = freePort();
+        int secondPort = freePort();
+        String urls = "http://localhost:" + firstPort + ",http://localhost:" + secondPort;
+        first = start(0, firstPort, urls);
+        second = start(1, secondPort, urls);
+    }
+
+    @AfterAll
+    static void stopInstances() {
+        if (second != null) {
+            second.close();
+        }
+        if (first != null) {
+            first.close();
+        }
+    }
+
+    @Test
+    void forwardsUpdateToShardOfUser() throws Exception {
+        UpdateShardRouter router = first.getBean(UpdateShardRouter.class);
+        long userId = 1;
+        while (router.shardOf(userId) != 1) {
+            userId++;
+        }
+        assertEquals(1, second.getBean(UpdateShardRouter.class).shardOf(userId));
+
+        // A message without text, which is processed but needs no reply
+        String update = """
+                {"update_id": 1, "message": {"message_id": 1, "date": %d,
+                 "from": {"id": %d, "is_bot": false, "first_name": "Test"},
+                 "chat": {"id": %d, "type": "private"}}}
+                """.formatted(System.currentTimeMillis() / 1000, userId, userId);
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + firstPort + "/telegram/webhook"))
+                .header("X-Telegram-Bot-Api-Secret-Token", SECRET_TOKEN)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(update))
+                .build();
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            assertEquals(200, client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode());
+        }
+
+        awaitTrue(() -> processedUpdates(second) == 1);
+        assertEquals(0, processedUpdates(first));
+    }
+
+    @Test
+    void rejectsOneOfConflictingMovesOfBothInstances() throws Exception {
+        CategoryService firstService = first.getBean(CategoryService.class);
+        CategoryService secondService = second.getBean(CategoryService.class);
+        JdbcTemplate jdbcTemplate = first.getBean(JdbcTemplate.class);
+        createTree(firstService);
+
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        for (int round = 0; round < 50; round++) {
+            // Each move is valid on its own, but together they would make a and b ancestors of each other
+            CompletableFuture<Boolean> firstMove = CompletableFuture.supplyAsync(() -> {
+                await(barrier);
+                return firstService.moveElement(USER_ID, "a", "b");
+            });
+            CompletableFuture<Boolean> secondMove = CompletableFuture.supplyAsync(() -> {
+                await(barrier);
+                return secondService.moveElement(USER_ID, "b", "a");
+            });
+
+            assertNotEquals(firstMove.get(), secondMove.get(), "exactly one move must succeed");
+            assertEquals(0, jdbcTemplate.queryForObject("""
+                    SELECT count(*) FROM categories c
+                    LEFT JOIN categories p ON p.id = c.parent_id
+                    WHERE c.user_id = ? AND c.path IS DISTINCT FROM coalesce(p.path, '{}') || c.id
+                    """, Integer.class, USER_ID), "paths must match the parents");
+
+            firstService.moveElement(USER_ID, "a", "root");
+            firstService.moveElement(USER_ID, "b", "root");
+        }
+
+        firstService.removeElementWithChildren(USER_ID, "root");
+    }
+
+    @Test
+    void retriesConcurrentAdditionsOfBothInstances() throws Exception {
+        CategoryService firstService = first.getBean(CategoryService.class);
+        CategoryService secondService = second.getBean(CategoryService.class);
+        createTree(firstService);
+
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        for (int round = 0; round < 20; round++) {
+            String firstName = "first-" + round;
+            String secondName = "second-" + round;
+            CompletableFuture<Boolean> firstAdd = CompletableFuture.supplyAsync(() -> {
+                await(barrier);
+                return firstService.addChildElement(USER_ID, "a", firstName);
+            });
+            CompletableFuture<Boolean> secondAdd = CompletableFuture.supplyAsync(() -> {
+                await(barrier);
+                return secondService.addChildElement(USER_ID, "a", secondName);
+            });
+
+            assertEquals(true, firstAdd.get());
+            assertEquals(true, secondAdd.get());
+        }
+
+        assertEquals(43, first.getBean(JdbcTemplate.class).queryForObject(
+                "SELECT count(*) FROM categories WHERE user_id = ?", Integer.class, USER_ID));
+
+        firstService.removeElementWithChildren(USER_ID, "root");
+    }
+
+    @Test
+    void rejectsOneOfConcurrentAdditionsOfSameNameByBothInstances() throws Exception {
+        CategoryService firstService = first.getBean(CategoryService.class);
+        CategoryService secondService = second.getBean(CategoryService.class);
+        createTree(firstService);
+
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        for (int round = 0; round < 20; round++) {
+            String name = "same-" + round;
+            CompletableFuture<Boolean> firstAdd = CompletableFuture.supplyAsync(() -> {
+                await(barrier);
+                return firstService.addChildElement(USER_ID, "a", name);
+            });
+            CompletableFuture<Boolean> secondAdd = CompletableFuture.supplyAsync(() -> {
+                await(barrier);
+                return secondService.addChildElement(USER_ID, "b", name);
+            });
+
+            assertNotEquals(firstAdd.get(), secondAdd.get(), "exactly one addition must succeed");
+        }
+
+        firstService.removeElementWithChildren(USER_ID, "root");
+
+        for (int round = 0; round < 20; round++) {
+            String name = "root-" + round;
+            CompletableFuture<Boolean> firstAdd = CompletableFuture.supplyAsync(() -> {
+                await(barrier);
+                return firstService.addRootElement(USER_ID, name);
+            });
+            CompletableFuture<Boolean> secondAdd = CompletableFuture.supplyAsync(() -> {
+                await(barrier);
+                return secondService.addRootElement(USER_ID, name);
+            });
+
+            assertNotEquals(firstAdd.get(), secondAdd.get(), "exactly one root must be added");
+            firstService.removeElementWithChildren(USER_ID, name);
+        }
+    }
+
+    @Test
+    void serializesAdditionUnderCategoryRemovedByOtherInstance() throws Exception {
+        CategoryService firstService = first.getBean(CategoryService.class);
+        CategoryService secondService = second.getBean(CategoryService.class);
+        JdbcTemplate jdbcTemplate = first.getBean(JdbcTemplate.class);
+        createTree(firstService);
+
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        for (int round = 0; round < 20; round++) {
+            // The addition locks the parent's row for its foreign key, the removal deletes it
+            String child = "a-" + round;
+            CompletableFuture<Boolean> add = CompletableFuture.supplyAsync(() -> {
+                await(barrier);
+                return firstService.addChildElement(USER_ID, "a", child);
+            });
+            CompletableFuture<Boolean> remove = CompletableFuture.supplyAsync(() -> {
+                await(barrier);
+                return secondService.removeElementWithChildren(USER_ID, "a");
+            });
+
+            add.get();
+            assertEquals(true, remove.get());
+            assertEquals(0, jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM categories WHERE user_id = ? AND name = ?", Integer.class, USER_ID, child));
+            assertEquals(true, firstService.addChildElement(USER_ID, "root", "a"));
+        }
+
+        firstService.removeElementWithChildren(USER_ID, "root");
+    }
+
+    @Test
+    void checksModificationAgainstTreeModifiedByOtherInstance() {
+        CategoryService firstService = first.getBean(CategoryService.class);
+        CategoryService secondService = second.getBean(CategoryService.class);
+        createTree(firstService);
+        // The second instance caches the tree, then the first one removes a category from it
+        assertEquals(true, secondService.elementExists(USER_ID, "a"));
+        assertEquals(true, firstService.removeElementWithChildren(USER_ID, "a"));
+
+        assertEquals(false, secondService.addChildElement(USER_ID, "a", "a1"));
+        assertEquals(false, secondService.elementExists(USER_ID, "a"));
+
+        firstService.removeElementWithChildren(USER_ID, "root");
+    }
+
+    private void createTree(CategoryService service) {
+        UserRepository userRepository = first.getBean(UserRepository.class);
+        if (!userRepository.existsById(USER_ID)) {
+            User user = new User();
+            user.setId(USER_ID);
+            userRepository.save(user);
+        }
+        service.removeElementWithChildren(USER_ID, "root");
+        service.addRootElement(USER_ID, "root");
+        service.addChildElement(USER_ID, "root", "a");
+        service.addChildElement(USER_ID, "root", "b");
+        // Reads are served from the cached tree, which an earlier test may have left stale in the second instance
+        second.getBean(CategoryTreeCache.class).invalidate(USER_ID);
+    }
+
+    private static ConfigurableApplicationContext start(int shardIndex, int port, String urls) {
+        return new SpringApplicationBuilder(TelegramBotCategoryTreeApplication.class).run(
+                "--server.port=" + port,
+                "--telegram.bot.token=test",
+                "--telegram.bot.mode=forwarded",
+                "--telegram.bot.webhook.secret-token=" + SECRET_TOKEN,
+                "--telegram.bot.shard.count=2",
+                "--telegram.bot.shard.index=" + shardIndex,
+                "--telegram.bot.shard.urls=" + urls,
+                "--spring.jpa.show-sql=false");
+    }
+
+    private static long processedUpdates(ConfigurableApplicationContext context) {
+        return context.getBean(MeterRegistry.class).get("telegram.updates.processing").timer().count();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(true, condition.getAsBoolean());
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package kz.nurbay.telegrambot.bot;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class BotUpdateDispatcherTest {
+
+    @Test
+    void processesUpdatesOfOneUserInOrderAndUsersInParallel() throws InterruptedException {
+        int users = 4;
+        int updatesPerUser = 50;
+        Map<Long, List<Integer>> processed = new ConcurrentHashMap<>();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(users * updatesPerUser);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        BotUpdateHandler handler = mock(BotUpdateHandler.class);
+        doAnswer(invocation -> {
+            Update update = invocation.getArgument(0);
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(1);
+            processed.computeIfAbsent(update.getMessage().getFrom().getId(),
+                    k -> Collections.synchronizedList(new ArrayList<>())).add(update.getUpdateId());
+            inFlight.decrementAndGet();
+            done.countDown();
+            return null;
+        }).when(handler).handleUpdate(any());
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        BotUpdateDispatcher dispatcher = new BotUpdateDispatcher(handler, meterRegistry, executor, users);
+        for (int i = 0; i < updatesPerUser; i++) {
+            for (long userId = 1; userId <= users; userId++) {
+                dispatcher.dispatch(update(userId, i));
+            }
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (long userId = 1; userId <= users; userId++) {
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < updatesPerUser; i++) {
+                expected.add(i);
+            }
+            assertEquals(expected, processed.get(userId));
+        }
+        assertTrue(maxInFlight.get() > 1);
+        assertTrue(maxInFlight.get() <= users);
+        assertEquals(users * updatesPerUser, meterRegistry.get("telegram.updates.queued").timer().count());
+        executor.close();
+    }
+
+    private static Update update(long userId, int updateId) {
+        User from = new User(userId, "user" + userId, false);
+        Message message = new Message();
+        message.setFrom(from);
+        message.setText("/viewTree");
+        Update update = new Update();
+        update.setUpdateId(updateId);
+        update.setMessage(message);
+        return update;
+    }
+}
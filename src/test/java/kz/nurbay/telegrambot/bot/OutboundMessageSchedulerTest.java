@@ -0,0 +1,171 @@
+package kz.nurbay.telegrambot.bot;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.objects.ResponseParameters;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import org.telegram.telegrambots.meta.generics.TelegramClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboundMessageSchedulerTest {
+
+    private final TelegramClient telegramClient = mock(TelegramClient.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final OutboundMessageScheduler scheduler = new OutboundMessageScheduler(
+            telegramClient, new TelegramApiMetrics(meterRegistry), meterRegistry, 30, 1, 3, 20, Duration.ofMillis(200), 3);
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void mergesTextsQueuedTogetherIntoOneMessage() throws Exception {
+        Message sent = new Message();
+        when(telegramClient.execute(any(SendMessage.class))).thenReturn(sent);
+
+        CompletableFuture<Message> first = scheduler.sendText(1L, "первый", false);
+        CompletableFuture<Message> second = scheduler.sendText(1L, "второй", false);
+        CompletableFuture<Message> formatted = scheduler.sendText(1L, "*третий*", true);
+
+        assertSame(sent, first.get(5, TimeUnit.SECONDS));
+        assertSame(sent, second.get(5, TimeUnit.SECONDS));
+        assertSame(sent, formatted.get(5, TimeUnit.SECONDS));
+
+        ArgumentCaptor<SendMessage> captor = ArgumentCaptor.forClass(SendMessage.class);
+        verify(telegramClient, times(2)).execute(captor.capture());
+        List<SendMessage> messages = captor.getAllValues();
+        assertEquals("первый\n\nвторой", messages.get(0).getText());
+        assertEquals("*третий*", messages.get(1).getText());
+        assertEquals("Markdown", messages.get(1).getParseMode());
+        assertEquals(0, scheduler.getQueueDepth());
+        assertEquals(2, meterRegistry.get("telegram.outbound.send").timer().count());
+        assertEquals(2, meterRegistry.get("telegram.api.requests").tag("method", SendMessage.PATH).timer().count());
+    }
+
+    @Test
+    void doesNotMergeTextsLongerThanOneMessage() throws Exception {
+        when(telegramClient.execute(any(SendMessage.class))).thenReturn(new Message());
+        String half = "a".repeat(OutboundMessageScheduler.MAX_MESSAGE_LENGTH / 2);
+
+        CompletableFuture<Message> first = scheduler.sendText(1L, half, false);
+        CompletableFuture<Message> second = scheduler.sendText(1L, half, false);
+        CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+
+        verify(telegramClient, times(2)).execute(any(SendMessage.class));
+    }
+
+    @Test
+    void retriesAfterTooManyRequests() throws Exception {
+        Message sent = new Message();
+        TelegramApiRequestException tooManyRequests = apiError(429, new ResponseParameters(null, 0));
+        when(telegramClient.execute(any(SendMessage.class))).thenThrow(tooManyRequests).thenReturn(sent);
+
+        assertSame(sent, scheduler.sendText(1L, "текст", false).get(5, TimeUnit.SECONDS));
+        verify(telegramClient, times(2)).execute(any(SendMessage.class));
+        assertEquals(1, meterRegistry.get("telegram.api.errors").tag("code", "429").counter().count());
+    }
+
+    @Test
+    void takesTokensForRetryAfterTooManyRequests() throws Exception {
+        TelegramApiRequestException tooManyRequests = apiError(429, new ResponseParameters(null, 0));
+        when(telegramClient.execute(any(SendMessage.class)))
+                .thenReturn(new Message(), new Message()).thenThrow(tooManyRequests).thenReturn(new Message());
+        for (int i = 0; i < 2; i++) {
+            scheduler.sendText(1L, "текст", false).get(5, TimeUnit.SECONDS);
+        }
+
+        long start = System.nanoTime();
+        scheduler.sendText(1L, "текст", false).get(5, TimeUnit.SECONDS);
+
+        // The first attempt takes the last token of the burst, so the retry waits for the next one
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(500));
+        verify(telegramClient, times(4)).execute(any(SendMessage.class));
+    }
+
+    @Test
+    void keepsDrainingChatAfterUnexpectedError() throws Exception {
+        IllegalStateException error = new IllegalStateException("broken request");
+        Message sent = new Message();
+        when(telegramClient.execute(any(SendMessage.class))).thenReturn(sent);
+
+        CompletableFuture<Message> failed = scheduler.submit(1L, SendMessage.PATH, client -> {
+            throw error;
+        });
+        CompletableFuture<Message> next = scheduler.sendText(1L, "текст", false);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertSame(error, e.getCause());
+        assertSame(sent, next.get(5, TimeUnit.SECONDS));
+        assertEquals(0, scheduler.getQueueDepth());
+    }
+
+    @Test
+    void failsWithoutRetryOnClientError() throws Exception {
+        TelegramApiRequestException badRequest = apiError(400, null);
+        when(telegramClient.execute(any(SendMessage.class))).thenThrow(badRequest);
+
+        CompletableFuture<Message> future = scheduler.sendText(-1L, "текст", false);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertSame(badRequest, e.getCause());
+        verify(telegramClient, times(1)).execute(any(SendMessage.class));
+    }
+
+    @Test
+    void forgetsChatOnceItIsIdleAndItsBucketIsFull() throws Exception {
+        when(telegramClient.execute(any(SendMessage.class))).thenReturn(new Message());
+
+        scheduler.sendText(1L, "текст", false).get(5, TimeUnit.SECONDS);
+
+        // The bucket of the chat, limited to 1 message per second, is full again after a second
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.getTrackedChatCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, scheduler.getTrackedChatCount());
+        assertEquals(0, scheduler.getQueueDepth());
+    }
+
+    @Test
+    void keepsRateLimitOfChatWhoseQueueWasDropped() throws Exception {
+        when(telegramClient.execute(any(SendMessage.class))).thenReturn(new Message());
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit(1L, SendMessage.PATH, client -> client.execute(new SendMessage("1", "текст")))
+                    .get(5, TimeUnit.SECONDS);
+        }
+
+        long start = System.nanoTime();
+        scheduler.sendText(1L, "текст", false).get(5, TimeUnit.SECONDS);
+
+        // The burst of 3 messages is used up, so the next one waits for a token
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(500));
+    }
+
+    private static TelegramApiRequestException apiError(int errorCode, ResponseParameters parameters) {
+        TelegramApiRequestException e = mock(TelegramApiRequestException.class);
+        when(e.getErrorCode()).thenReturn(errorCode);
+        when(e.getParameters()).thenReturn(parameters);
+        when(e.getMessage()).thenReturn("Error " + errorCode);
+        return e;
+    }
+}
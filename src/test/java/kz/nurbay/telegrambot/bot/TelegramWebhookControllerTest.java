@@ -0,0 +1,88 @@
+package kz.nurbay.telegrambot.bot;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = TelegramWebhookController.class, properties = {
+        "telegram.bot.mode=webhook",
+        "telegram.bot.webhook.secret-token=test-secret"
+})
+@Import(UpdateShardRouter.class)
+class TelegramWebhookControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private BotUpdateDispatcher updateDispatcher;
+
+    @Value("classpath:updates/message.json")
+    private Resource messageUpdate;
+
+    @Test
+    void dispatchesUpdateWithValidSecretToken() throws Exception {
+        mockMvc.perform(post("/telegram/webhook")
+                        .header(TelegramWebhookController.SECRET_TOKEN_HEADER, "test-secret")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(messageUpdate)))
+                .andExpect(status().isOk());
+
+        ArgumentCaptor<Update> captor = ArgumentCaptor.forClass(Update.class);
+        verify(updateDispatcher).dispatch(captor.capture());
+        Update update = captor.getValue();
+        assertEquals(813770001, update.getUpdateId());
+        assertEquals("/viewTree", update.getMessage().getText());
+        assertEquals(123456789L, update.getMessage().getFrom().getId());
+        assertEquals(123456789L, update.getMessage().getChatId());
+    }
+
+    @Test
+    void rejectsUpdateWithWrongSecretToken() throws Exception {
+        mockMvc.perform(post("/telegram/webhook")
+                        .header(TelegramWebhookController.SECRET_TOKEN_HEADER, "wrong-secret")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(messageUpdate)))
+                .andExpect(status().isUnauthorized());
+
+        mockMvc.perform(post("/telegram/webhook")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(messageUpdate)))
+                .andExpect(status().isUnauthorized());
+
+        verify(updateDispatcher, never()).dispatch(any());
+    }
+
+    @Test
+    void dispatchesForwardedUpdateLocally() throws Exception {
+        mockMvc.perform(post("/telegram/webhook")
+                        .header(TelegramWebhookController.SECRET_TOKEN_HEADER, "test-secret")
+                        .header(UpdateShardRouter.FORWARDED_FROM_HEADER, "1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(json(messageUpdate)))
+                .andExpect(status().isOk());
+
+        verify(updateDispatcher).dispatch(any());
+    }
+
+    private static byte[] json(Resource resource) throws IOException {
+        return resource.getContentAsByteArray();
+    }
+}
@@ -0,0 +1,147 @@
+package kz.nurbay.telegrambot.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Guards the indexes of the categories table: each query issued by {@link CategoryRepository}
+ * must be answered from an index rather than by a sequential scan.
+ * The SQL is captured from the repository methods as Hibernate sends it, prepared, and explained
+ * as a generic plan, which does not depend on the parameter values.
+ * Sequential scans are disabled for the transaction, so the planner uses them only if no index applies.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "kz.nurbay.telegrambot.repository.CategoryQueryPlanTest$RecordingStatementInspector")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class CategoryQueryPlanTest {
+
+    private static final Long USER_ID = -1L;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void disableSequentialScans() {
+        jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+        jdbcTemplate.execute("SET LOCAL plan_cache_mode = force_generic_plan");
+        RecordingStatementInspector.STATEMENTS.clear();
+    }
+
+    @Test
+    void streamNodesByUserIdUsesIndex() {
+        String plan = explain(() -> {
+            try (Stream<?> nodes = categoryRepository.streamNodesByUserId(USER_ID)) {
+                nodes.count();
+            }
+        });
+
+        assertUsesIndex(plan);
+    }
+
+    @Test
+    void streamRowsByUserIdInTreeOrderUsesIndex() {
+        String plan = explain(() -> {
+            try (Stream<?> rows = categoryRepository.streamRowsByUserIdInTreeOrder(USER_ID)) {
+                rows.count();
+            }
+        });
+
+        assertUsesIndex(plan);
+    }
+
+    @Test
+    void existsByUserIdAndParentIsNullUsesIndex() {
+        String plan = explain(() -> categoryRepository.existsByUserIdAndParentIsNull(USER_ID));
+
+        assertUsesIndex(plan);
+    }
+
+    @Test
+    void searchByNameUsesIndexes() {
+        String plan = explain(() -> categoryRepository.searchByName(USER_ID, "%phone%", "phone", 20));
+
+        assertUsesIndex(plan);
+    }
+
+    @Test
+    void deleteSubtreeByNameUsesPathIndex() {
+        String plan = explain(() -> categoryRepository.deleteSubtreeByName(USER_ID, "name"));
+
+        assertTrue(plan.contains("idx_categories_path"), plan);
+        assertUsesIndex(plan);
+    }
+
+    @Test
+    void moveSubtreeUsesPathIndex() {
+        String plan = explain(() -> categoryRepository.moveSubtree(USER_ID, "name", "parent"));
+
+        assertTrue(plan.contains("idx_categories_path"), plan);
+        assertUsesIndex(plan);
+    }
+
+    private void assertUsesIndex(String plan) {
+        assertTrue(plan.contains("Index"), plan);
+        assertFalse(plan.contains("Seq Scan"), plan);
+    }
+
+    /**
+     * Runs the repository call, captures the single statement it sends and returns the generic plan of it.
+     *
+     * @param call the repository call
+     * @return the plan of the statement
+     */
+    private String explain(Runnable call) {
+        call.run();
+        assertEquals(1, RecordingStatementInspector.STATEMENTS.size(), RecordingStatementInspector.STATEMENTS::toString);
+        String sql = RecordingStatementInspector.STATEMENTS.get(0);
+
+        StringBuilder prepared = new StringBuilder();
+        int parameters = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '?') {
+                prepared.append('$').append(++parameters);
+            } else {
+                prepared.append(c);
+            }
+        }
+
+        jdbcTemplate.execute("PREPARE plan_test AS " + prepared);
+        try {
+            String arguments = parameters == 0 ? "" : "(" + String.join(", ", Collections.nCopies(parameters, "NULL")) + ")";
+            List<String> lines = jdbcTemplate.queryForList("EXPLAIN EXECUTE plan_test" + arguments, String.class);
+            return String.join("\n", lines);
+        } finally {
+            jdbcTemplate.execute("DEALLOCATE plan_test");
+        }
+    }
+
+    /**
+     * Records the SQL of the statements Hibernate prepares.
+     */
+    public static class RecordingStatementInspector implements StatementInspector {
+
+        static final List<String> STATEMENTS = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+}
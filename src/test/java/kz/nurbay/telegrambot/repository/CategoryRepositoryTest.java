@@ -0,0 +1,159 @@
+package kz.nurbay.telegrambot.repository;
+
+import jakarta.persistence.EntityManager;
+import kz.nurbay.telegrambot.model.Category;
+import kz.nurbay.telegrambot.model.CategoryMatch;
+import kz.nurbay.telegrambot.model.CategoryNode;
+import kz.nurbay.telegrambot.model.CategoryRow;
+import kz.nurbay.telegrambot.model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class CategoryRepositoryTest {
+
+    private static final Long USER_ID = -1L;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private EntityManager entityManager;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        user = new User();
+        user.setId(USER_ID);
+        user = userRepository.save(user);
+    }
+
+    @Test
+    void deleteSubtreeByNameDeletesOnlyTheSubtree() {
+        Category root = save("root", null);
+        Category branch = save("branch", root);
+        Category leaf = save("leaf", branch);
+        save("deepLeaf", leaf);
+        save("sibling", root);
+
+        int deleted = categoryRepository.deleteSubtreeByName(USER_ID, "branch");
+
+        assertEquals(3, deleted);
+        assertEquals(List.of(new CategoryRow("root", 0), new CategoryRow("sibling", 1)), rows());
+    }
+
+    @Test
+    void deleteSubtreeByNameReturnsZeroForUnknownName() {
+        save("root", null);
+
+        assertEquals(0, categoryRepository.deleteSubtreeByName(USER_ID, "missing"));
+    }
+
+    @Test
+    void streamRowsByUserIdInTreeOrderReturnsDepthsInDepthFirstOrder() {
+        Category root = save("root", null);
+        Category first = save("first", root);
+        save("second", root);
+        save("firstChild", first);
+
+        try (Stream<CategoryRow> rows = categoryRepository.streamRowsByUserIdInTreeOrder(USER_ID)) {
+            assertEquals(List.of(new CategoryRow("root", 0), new CategoryRow("first", 1),
+                            new CategoryRow("firstChild", 2), new CategoryRow("second", 1)),
+                    rows.toList());
+        }
+        try (Stream<CategoryNode> nodes = categoryRepository.streamNodesByUserId(USER_ID)) {
+            assertEquals(4, nodes.count());
+        }
+    }
+
+    @Test
+    void searchByNameFindsSubstringAndSimilarNamesWithTheirPaths() {
+        Category root = save("Электроника", null);
+        Category phones = save("Телефоны", root);
+        save("Смартфоны", phones);
+        save("Laptops", root);
+        save("100%_готово", root);
+
+        List<CategoryMatch> substring = categoryRepository.searchByName(USER_ID, "%фон%", "фон", 20);
+        // Trigrams of non-Latin letters depend on the database locale, so the fuzzy match is checked on a Latin name
+        List<CategoryMatch> fuzzy = categoryRepository.searchByName(USER_ID, "%Laptpos%", "Laptpos", 20);
+        List<CategoryMatch> escaped = categoryRepository.searchByName(USER_ID, "%0\\%\\_%", "0%_", 20);
+
+        assertEquals(List.of("Электроника / Телефоны", "Электроника / Телефоны / Смартфоны"),
+                substring.stream().map(CategoryMatch::getPath).sorted().toList());
+        assertEquals(List.of("Laptops"), fuzzy.stream().map(CategoryMatch::getName).toList());
+        assertEquals(List.of("100%_готово"), escaped.stream().map(CategoryMatch::getName).toList());
+        assertEquals(1, categoryRepository.searchByName(USER_ID, "%о%", "о", 1).size());
+    }
+
+    @Test
+    void moveSubtreeMovesTheSubtreeAndRewritesItsPaths() {
+        Category root = save("root", null);
+        Category branch = save("branch", root);
+        save("leaf", branch);
+        Category sibling = save("sibling", root);
+
+        assertEquals(2, categoryRepository.moveSubtree(USER_ID, "branch", "sibling"));
+        entityManager.clear();
+
+        assertEquals(sibling.getId(), categoryRepository.findById(branch.getId()).orElseThrow().getParent().getId());
+        assertEquals(List.of(new CategoryRow("root", 0), new CategoryRow("sibling", 1),
+                new CategoryRow("branch", 2), new CategoryRow("leaf", 3)), rows());
+    }
+
+    @Test
+    void moveSubtreeRefusesCyclesAndTheRoot() {
+        Category root = save("root", null);
+        Category branch = save("branch", root);
+        save("leaf", branch);
+
+        assertEquals(0, categoryRepository.moveSubtree(USER_ID, "branch", "leaf"));
+        assertEquals(0, categoryRepository.moveSubtree(USER_ID, "branch", "branch"));
+        assertEquals(0, categoryRepository.moveSubtree(USER_ID, "root", "leaf"));
+        assertEquals(0, categoryRepository.moveSubtree(USER_ID, "branch", "missing"));
+        assertEquals(List.of(new CategoryRow("root", 0), new CategoryRow("branch", 1), new CategoryRow("leaf", 2)),
+                rows());
+    }
+
+    @Test
+    void saveAllInsertsParentsAndChildrenInOneBatch() {
+        Category root = category("root", null);
+        Category child = category("child", root);
+        Category grandchild = category("grandchild", child);
+
+        categoryRepository.saveAll(List.of(root, child, grandchild));
+        categoryRepository.flush();
+
+        assertEquals(List.of(new CategoryRow("root", 0), new CategoryRow("child", 1), new CategoryRow("grandchild", 2)),
+                rows());
+    }
+
+    private List<CategoryRow> rows() {
+        try (Stream<CategoryRow> rows = categoryRepository.streamRowsByUserIdInTreeOrder(USER_ID)) {
+            return rows.toList();
+        }
+    }
+
+    private Category save(String name, Category parent) {
+        return categoryRepository.saveAndFlush(category(name, parent));
+    }
+
+    private Category category(String name, Category parent) {
+        Category category = new Category();
+        category.setName(name);
+        category.setParent(parent);
+        category.setUser(user);
+        return category;
+    }
+}
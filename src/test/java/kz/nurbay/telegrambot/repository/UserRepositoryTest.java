@@ -0,0 +1,40 @@
+package kz.nurbay.telegrambot.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class UserRepositoryTest {
+
+    private static final Long USER_ID = -1L;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void insertIfNotExistsIsIdempotent() {
+        assertEquals(1, userRepository.insertIfNotExists(USER_ID));
+        assertEquals(0, userRepository.insertIfNotExists(USER_ID));
+
+        assertTrue(userRepository.existsById(USER_ID));
+    }
+
+    @Test
+    void incrementsTreeVersionOnlyFromExpectedVersion() {
+        assertNull(userRepository.findTreeVersionById(USER_ID));
+        userRepository.insertIfNotExists(USER_ID);
+        assertEquals(0L, userRepository.findTreeVersionById(USER_ID));
+
+        assertEquals(1, userRepository.incrementTreeVersion(USER_ID, 0));
+        assertEquals(0, userRepository.incrementTreeVersion(USER_ID, 0));
+
+        assertEquals(1L, userRepository.findTreeVersionById(USER_ID));
+    }
+}
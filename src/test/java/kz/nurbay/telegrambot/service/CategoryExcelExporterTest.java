@@ -0,0 +1,81 @@
+package kz.nurbay.telegrambot.service;
+
+import kz.nurbay.telegrambot.model.CategoryRow;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CategoryExcelExporterTest {
+
+    private final CategoryExcelExporter exporter = new CategoryExcelExporter();
+
+    @Test
+    void writesEveryCategoryInTheColumnOfItsDepth() throws IOException {
+        Stream<CategoryRow> rows = Stream.of(
+                new CategoryRow("root", 0),
+                new CategoryRow("a", 1),
+                new CategoryRow("a1", 2),
+                new CategoryRow("b", 1));
+
+        Sheet sheet = export(rows).getSheetAt(0);
+
+        assertCell(sheet.getRow(0), 0, "root");
+        assertCell(sheet.getRow(1), 1, "a");
+        assertCell(sheet.getRow(2), 2, "a1");
+        assertCell(sheet.getRow(3), 1, "b");
+    }
+
+    @Test
+    void exportsTreeAsDeepAsTheSheetIsWide() throws IOException {
+        int depth = CategoryExcelExporter.MAX_COLUMN_INDEX + 1;
+
+        Sheet sheet = export(chain(depth)).getSheetAt(0);
+
+        assertEquals(depth - 1, sheet.getLastRowNum());
+        assertCell(sheet.getRow(depth - 1), depth - 1, "n" + (depth - 1));
+    }
+
+    @Test
+    void rejectsTreeDeeperThanTheSheetIsWide() {
+        Stream<CategoryRow> rows = chain(CategoryExcelExporter.MAX_COLUMN_INDEX + 2);
+
+        assertThrows(IOException.class, () -> exporter.export(rows, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void exportsVeryWideTree() throws IOException {
+        int width = 50_000;
+        Stream<CategoryRow> rows = Stream.concat(Stream.of(new CategoryRow("root", 0)),
+                IntStream.rangeClosed(1, width).mapToObj(i -> new CategoryRow("c" + i, 1)));
+
+        Sheet sheet = export(rows).getSheetAt(0);
+
+        assertEquals(width, sheet.getLastRowNum());
+        assertCell(sheet.getRow(width), 1, "c" + width);
+    }
+
+    private XSSFWorkbook export(Stream<CategoryRow> rows) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        exporter.export(rows, outputStream);
+        return new XSSFWorkbook(new ByteArrayInputStream(outputStream.toByteArray()));
+    }
+
+    private static Stream<CategoryRow> chain(int depth) {
+        return IntStream.range(0, depth).mapToObj(level -> new CategoryRow("n" + level, level));
+    }
+
+    private static void assertCell(Row row, int column, String name) {
+        assertEquals(column, row.getFirstCellNum());
+        assertEquals(name, row.getCell(column).getStringCellValue());
+    }
+}
@@ -0,0 +1,106 @@
+package kz.nurbay.telegrambot.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kz.nurbay.telegrambot.model.CategoryRow;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CategoryExporterTest {
+
+    private static Stream<CategoryRow> rows() {
+        return Stream.of(
+                new CategoryRow("root", 0),
+                new CategoryRow("a", 1),
+                new CategoryRow("a1", 2),
+                new CategoryRow("a11", 3),
+                new CategoryRow("b, \"quoted\"", 1),
+                new CategoryRow("b1", 2));
+    }
+
+    @Test
+    void writesCsvWithLevelAndParent() throws IOException {
+        String csv = export(new CategoryCsvExporter(), rows());
+
+        assertEquals("level,name,parent\r\n"
+                + "0,root,\r\n"
+                + "1,a,root\r\n"
+                + "2,a1,a\r\n"
+                + "3,a11,a1\r\n"
+                + "1,\"b, \"\"quoted\"\"\",root\r\n"
+                + "2,b1,\"b, \"\"quoted\"\"\"\r\n", csv);
+    }
+
+    @Test
+    void writesNestedJson() throws IOException {
+        JsonNode root = new ObjectMapper().readTree(export(new CategoryJsonExporter(), rows()));
+
+        assertEquals("root", root.get("name").asText());
+        assertEquals(2, root.get("children").size());
+        assertEquals("a11", root.get("children").get(0).get("children").get(0).get("children").get(0).get("name").asText());
+        assertEquals("b1", root.get("children").get(1).get("children").get(0).get("name").asText());
+        assertNull(root.get("children").get(1).get("children").get(0).get("children"));
+    }
+
+    @Test
+    void writesJsonOfVeryDeepChain() throws IOException {
+        int depth = 100_000;
+        String json = export(new CategoryJsonExporter(),
+                IntStream.range(0, depth).mapToObj(i -> new CategoryRow("c" + i, i)));
+
+        // Read with a streaming parser, as a tree of this depth would overflow the stack of ObjectMapper
+        JsonFactory jsonFactory = JsonFactory.builder()
+                .streamReadConstraints(StreamReadConstraints.builder().maxNestingDepth(Integer.MAX_VALUE).build())
+                .build();
+        int objects = 0;
+        String lastName = null;
+        try (JsonParser parser = jsonFactory.createParser(json)) {
+            for (JsonToken token = parser.nextToken(); token != null; token = parser.nextToken()) {
+                if (token == JsonToken.START_OBJECT) {
+                    objects++;
+                } else if (token == JsonToken.VALUE_STRING) {
+                    lastName = parser.getText();
+                }
+            }
+        }
+        assertEquals(depth, objects);
+        assertEquals("c" + (depth - 1), lastName);
+    }
+
+    @Test
+    void writesEmptyJsonForEmptyTree() throws IOException {
+        assertEquals("", export(new CategoryJsonExporter(), Stream.empty()));
+    }
+
+    @Test
+    void writesIndentedText() throws IOException {
+        String text = export(new CategoryTextExporter(), rows());
+
+        assertEquals("""
+                root
+                    a
+                        a1
+                            a11
+                    b, "quoted"
+                        b1
+                """, text);
+    }
+
+    private static String export(CategoryExporter exporter, Stream<CategoryRow> rows) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        exporter.export(rows, outputStream);
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,124 @@
+package kz.nurbay.telegrambot.service;
+
+import kz.nurbay.telegrambot.model.CategoryRow;
+import kz.nurbay.telegrambot.model.User;
+import kz.nurbay.telegrambot.repository.CategoryRepository;
+import kz.nurbay.telegrambot.repository.UserRepository;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({CategoryImportService.class, CategoryTreeCache.class, CategoryTreeVersions.class})
+class CategoryImportServiceTest {
+
+    private static final Long USER_ID = -1L;
+
+    @Autowired
+    private CategoryImportService categoryImportService;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setId(USER_ID);
+        userRepository.save(user);
+    }
+
+    @Test
+    void importsTreeExportedByExcelExporter() throws IOException {
+        // A tree of 1000 categories in which category i has the children 5i - 3 to 5i + 1
+        List<CategoryRow> rows = depthFirstRows(1, 0, 1000, new ArrayList<>());
+        Path file = new CategoryExcelExporter().exportToTempFile(rows.stream());
+
+        try {
+            int count = categoryImportService.importExcel(USER_ID, file);
+
+            assertEquals(rows.size(), count);
+            try (Stream<CategoryRow> imported = categoryRepository.streamRowsByUserIdInTreeOrder(USER_ID)) {
+                assertEquals(rows.stream().map(CategoryRow::name).toList(),
+                        imported.map(CategoryRow::name).toList());
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void rejectsSecondRoot() throws IOException {
+        Path file = writeRows(new int[]{0, 1, 0});
+
+        try {
+            assertThrows(CategoryImportException.class, () -> categoryImportService.importExcel(USER_ID, file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void rejectsSkippedLevel() throws IOException {
+        Path file = writeRows(new int[]{0, 2});
+
+        try {
+            assertThrows(CategoryImportException.class, () -> categoryImportService.importExcel(USER_ID, file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void rejectsFileThatIsNotExcel() throws IOException {
+        Path file = Files.createTempFile("categories-", ".xlsx");
+        Files.writeString(file, "root,child");
+
+        try {
+            assertThrows(CategoryImportException.class, () -> categoryImportService.importExcel(USER_ID, file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Writes one category per row, in the column given for the row.
+     */
+    private Path writeRows(int[] levels) throws IOException {
+        Path file = Files.createTempFile("categories-", ".xlsx");
+        try (Workbook workbook = new XSSFWorkbook(); OutputStream outputStream = Files.newOutputStream(file)) {
+            Sheet sheet = workbook.createSheet("Categories");
+            for (int i = 0; i < levels.length; i++) {
+                sheet.createRow(i).createCell(levels[i]).setCellValue("category-" + i);
+            }
+            workbook.write(outputStream);
+        }
+        return file;
+    }
+
+    private List<CategoryRow> depthFirstRows(int id, int depth, int size, List<CategoryRow> rows) {
+        rows.add(new CategoryRow("category-" + id, depth));
+        for (int child = 5 * id - 3; child <= Math.min(5 * id + 1, size); child++) {
+            depthFirstRows(child, depth + 1, size, rows);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,125 @@
+package kz.nurbay.telegrambot.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import kz.nurbay.telegrambot.model.Category;
+import kz.nurbay.telegrambot.model.User;
+import kz.nurbay.telegrambot.repository.CategoryRepository;
+import kz.nurbay.telegrambot.repository.UserRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks how many SQL statements the read paths of /viewTree and /download and the modifications of a tree execute.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({CategoryService.class, UserService.class, CategoryTreeCache.class, CategoryTreeVersions.class,
+        RenderedTreeCache.class, CategoryExcelExporter.class, CategoryCsvExporter.class, CategoryJsonExporter.class,
+        CategoryTextExporter.class})
+class CategoryServiceStatementCountTest {
+
+    private static final Long USER_ID = -1L;
+
+    @Autowired
+    private CategoryService categoryService;
+    @Autowired
+    private CategoryTreeVersions categoryTreeVersions;
+    @Autowired
+    private CategoryRepository categoryRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        User user = new User();
+        user.setId(USER_ID);
+        user = userRepository.save(user);
+
+        // Three levels, so that loading parents one by one would show up as extra statements
+        Category root = save("root", null, user);
+        for (int i = 0; i < 10; i++) {
+            Category child = save("child-" + i, root, user);
+            for (int j = 0; j < 10; j++) {
+                save("leaf-" + i + "-" + j, child, user);
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        // The categories were saved past the service, so move the version past the one earlier tests cached against
+        entityManager.createNativeQuery("UPDATE users SET tree_version = :version WHERE id = :id")
+                .setParameter("version", categoryTreeVersions.get(USER_ID) + 1)
+                .setParameter("id", USER_ID)
+                .executeUpdate();
+        categoryTreeVersions.read(USER_ID);
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void viewTreeLoadsTreeWithOneStatement() {
+        TreePage page = categoryService.getTreePage(USER_ID, 0);
+
+        assertNotNull(page);
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+
+        categoryService.getTreePage(USER_ID, 1);
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void downloadStreamsTreeWithOneStatementInEveryFormat() throws IOException {
+        for (ExportFormat format : ExportFormat.values()) {
+            statistics.clear();
+            Path file = categoryService.createExportFile(USER_ID, format);
+
+            try {
+                assertNotNull(file, format.name());
+                assertEquals(1, statistics.getPrepareStatementCount(), format.name());
+                assertEquals(0, statistics.getEntityLoadCount(), format.name());
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    void moveElementRunsCompareAndSetAndMoveOnly() {
+        assertTrue(categoryService.elementExists(USER_ID, "child-1"));
+        statistics.clear();
+
+        assertTrue(categoryService.moveElement(USER_ID, "child-1", "child-0"));
+        // The version known for the cached tree is incremented without reading it first
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    private Category save(String name, Category parent, User user) {
+        Category category = new Category();
+        category.setName(name);
+        category.setParent(parent);
+        category.setUser(user);
+        return categoryRepository.save(category);
+    }
+}
@@ -0,0 +1,124 @@
+package kz.nurbay.telegrambot.service;
+
+import kz.nurbay.telegrambot.model.CategoryNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CategoryTreeRendererTest {
+
+    private final CategoryTree tree = CategoryTree.of(List.of(
+            new CategoryNode(1L, null, "root"),
+            new CategoryNode(2L, 1L, "a"),
+            new CategoryNode(3L, 2L, "a1"),
+            new CategoryNode(4L, 2L, "a2"),
+            new CategoryNode(5L, 4L, "a21"),
+            new CategoryNode(6L, 1L, "b"),
+            new CategoryNode(7L, 6L, "b1")));
+
+    private static final String RENDERED = """
+            root
+                ├── a
+                │   ├── a1
+                │   └── a2
+                │       └── a21
+                └── b
+                    └── b1
+            """;
+
+    @Test
+    void rendersWholeTree() {
+        StringBuilder builder = new StringBuilder();
+
+        Long next = CategoryTreeRenderer.render(tree, 1L, Integer.MAX_VALUE, Integer.MAX_VALUE, builder);
+
+        assertNull(next);
+        assertEquals(RENDERED, builder.toString());
+    }
+
+    @Test
+    void pagesStartingInsideTheTreeContinueTheSameLines() {
+        for (int pageLines = 1; pageLines <= 7; pageLines++) {
+            StringBuilder builder = new StringBuilder();
+            Long start = 1L;
+            int pages = 0;
+            while (start != null) {
+                StringBuilder page = new StringBuilder();
+                start = CategoryTreeRenderer.render(tree, start, pageLines, Integer.MAX_VALUE, page);
+                assertTrue(page.toString().lines().count() <= pageLines);
+                builder.append(page);
+                pages++;
+            }
+
+            assertEquals(RENDERED, builder.toString());
+            assertEquals((7 + pageLines - 1) / pageLines, pages);
+        }
+    }
+
+    @Test
+    void stopsBeforeExceedingCharacterLimit() {
+        StringBuilder builder = new StringBuilder();
+
+        Long next = CategoryTreeRenderer.render(tree, 1L, Integer.MAX_VALUE, 29, builder);
+
+        assertEquals("root\n    ├── a\n", builder.toString());
+        assertEquals(3L, next);
+    }
+
+    @Test
+    void rendersVeryDeepTreePageByPage() {
+        int depth = 100_000;
+        List<CategoryNode> nodes = new ArrayList<>(depth);
+        nodes.add(new CategoryNode(1L, null, "n1"));
+        for (long id = 2; id <= depth; id++) {
+            nodes.add(new CategoryNode(id, id - 1, "n" + id));
+        }
+        CategoryTree deepTree = CategoryTree.of(nodes);
+
+        StringBuilder first = new StringBuilder();
+        Long next = CategoryTreeRenderer.render(deepTree, 1L, 10, 4000, first);
+        assertEquals(11L, next);
+        assertEquals(10, first.toString().lines().count());
+        assertTrue(first.toString().endsWith("    ".repeat(9) + "└── n10\n"));
+
+        // Near the bottom a single line fills a page, and only the end of its prefix is shown
+        StringBuilder deep = new StringBuilder();
+        next = CategoryTreeRenderer.render(deepTree, (long) depth - 1, 50, 4000, deep);
+        assertEquals((long) depth, next);
+        StringBuilder last = new StringBuilder();
+        assertNull(CategoryTreeRenderer.render(deepTree, next, 50, 4000, last));
+        for (StringBuilder page : List.of(deep, last)) {
+            assertEquals(4000, page.length());
+            assertTrue(page.toString().startsWith("…    "));
+        }
+        assertTrue(last.toString().endsWith("    └── n" + depth + "\n"));
+
+        assertEquals(1, deepTree.withoutSubtree(2L).size());
+    }
+
+    @Test
+    void rendersVeryWideTree() {
+        int width = 100_000;
+        List<CategoryNode> nodes = new ArrayList<>(width + 1);
+        nodes.add(new CategoryNode(1L, null, "root"));
+        for (long id = 2; id <= width + 1; id++) {
+            nodes.add(new CategoryNode(id, 1L, "c" + id));
+        }
+        CategoryTree wideTree = CategoryTree.of(nodes);
+
+        StringBuilder all = new StringBuilder();
+        assertNull(CategoryTreeRenderer.render(wideTree, 1L, Integer.MAX_VALUE, Integer.MAX_VALUE, all));
+        assertEquals(width + 1, all.toString().lines().count());
+        assertTrue(all.toString().endsWith("    └── c" + (width + 1) + "\n"));
+
+        StringBuilder page = new StringBuilder();
+        Long next = CategoryTreeRenderer.render(wideTree, 50_000L, 2, 4000, page);
+        assertEquals("    ├── c50000\n    ├── c50001\n", page.toString());
+        assertEquals(50_002L, next);
+    }
+}
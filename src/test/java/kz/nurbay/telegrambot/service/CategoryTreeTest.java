@@ -0,0 +1,152 @@
+package kz.nurbay.telegrambot.service;
+
+import kz.nurbay.telegrambot.model.CategoryNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CategoryTreeTest {
+
+    // Added out of ID order, as a query without ORDER BY may return them
+    private final CategoryTree tree = CategoryTree.of(List.of(
+            new CategoryNode(6L, 1L, "b"),
+            new CategoryNode(3L, 2L, "a1"),
+            new CategoryNode(1L, null, "root"),
+            new CategoryNode(5L, 4L, "категория"),
+            new CategoryNode(2L, 1L, "a"),
+            new CategoryNode(4L, 2L, "a2"),
+            new CategoryNode(7L, 6L, "a")));
+
+    @Test
+    void ordersChildrenById() {
+        assertEquals(new CategoryNode(1L, null, "root"), tree.getRoot());
+        assertEquals(List.of(new CategoryNode(2L, 1L, "a"), new CategoryNode(6L, 1L, "b")), children(tree, 1L));
+        assertEquals(List.of(3L, 4L), children(tree, 2L).stream().map(CategoryNode::id).toList());
+        assertEquals(List.of(), children(tree, 7L));
+        assertEquals(1, tree.positionAmongSiblings(tree.indexOf(4L)));
+    }
+
+    @Test
+    void findsCategoriesByIdAndName() {
+        assertEquals(new CategoryNode(5L, 4L, "категория"), tree.nodeAt(tree.indexOf(5L)));
+        assertEquals(CategoryTree.NO_INDEX, tree.indexOf(100L));
+        assertEquals(new CategoryNode(5L, 4L, "категория"), tree.findByName("категория"));
+        // The category with the lowest ID wins when names are shared
+        assertEquals(2L, tree.findByName("a").id());
+        assertNull(tree.findByName("missing"));
+        assertNull(tree.findByName(""));
+    }
+
+    @Test
+    void addsAndRemovesCategories() {
+        CategoryTree added = tree.withNodes(List.of(new CategoryNode(8L, 3L, "a11"), new CategoryNode(1L, null, "x")));
+
+        assertEquals(new CategoryNode(8L, 3L, "a11"), added.findByName("a11"));
+        assertEquals("root", added.getRoot().name());
+        assertSame(added, added.withNode(new CategoryNode(8L, 3L, "a11")));
+        assertEquals(8, added.size());
+
+        CategoryTree removed = added.withoutSubtree(2L);
+
+        assertEquals(7L, removed.findByName("a").id());
+        assertNull(removed.findByName("a11"));
+        assertSame(removed, removed.withoutSubtree(100L));
+        assertEquals(3, removed.size());
+        assertEquals(List.of(1L, 6L, 7L), subtreeIds(removed, 1L));
+    }
+
+    @Test
+    void movesCategoryWithItsDescendants() {
+        CategoryTree moved = tree.withParent(2L, 7L);
+
+        assertEquals(new CategoryNode(2L, 7L, "a"), moved.findByName("a"));
+        assertSame(moved, moved.withParent(2L, 100L));
+        assertEquals(new CategoryNode(2L, 7L, "a"), moved.nodeAt(moved.indexOf(2L)));
+        assertEquals(List.of(1L, 6L, 7L, 2L, 3L, 4L, 5L), subtreeIds(moved, 1L));
+    }
+
+    @Test
+    void answersChecksOfModificationsBeforeApplyingThem() {
+        CategoryTree modified = tree
+                .withNode(new CategoryNode(8L, 4L, "a21"))
+                .withParent(4L, 6L)
+                .withoutSubtree(6L)
+                .withNode(new CategoryNode(9L, 2L, "a2"))
+                .withParent(3L, 9L);
+
+        // The removed subtree contains the moved category and the category added under it
+        assertNull(modified.findByName("b"));
+        assertNull(modified.findByName("a21"));
+        assertNull(modified.findByName("категория"));
+        assertEquals(new CategoryNode(9L, 2L, "a2"), modified.findByName("a2"));
+        assertEquals(new CategoryNode(3L, 9L, "a1"), modified.findByName("a1"));
+        assertEquals(new CategoryNode(2L, 1L, "a"), modified.findByName("a"));
+        assertSame(modified, modified.withParent(8L, 1L));
+
+        assertEquals(List.of(1L, 2L, 9L, 3L), subtreeIds(modified, 1L));
+    }
+
+    @Test
+    void replacesRemovedRoot() {
+        CategoryTree replaced = tree.withoutSubtree(1L).withNode(new CategoryNode(8L, null, "new root"));
+
+        assertEquals(new CategoryNode(8L, null, "new root"), replaced.getRoot());
+        assertNull(replaced.findByName("a"));
+        assertEquals(1, replaced.size());
+        assertEquals(new CategoryNode(8L, null, "new root"), replaced.getRoot());
+    }
+
+    @Test
+    void appliesChangesOnceTooManyArePending() {
+        CategoryTree modified = tree;
+        for (long id = 8; id < 8 + CategoryTree.MAX_PENDING_CHANGES; id++) {
+            modified = modified.withNode(new CategoryNode(id, 1L, "c" + id));
+        }
+        CategoryTree pending = modified;
+        CategoryTree applied = pending.withNode(new CategoryNode(1000L, 1L, "last"));
+
+        assertEquals(pending.size() + 1, applied.size());
+        assertEquals(CategoryTree.MAX_PENDING_CHANGES + 8, applied.size());
+        assertEquals(1000L, applied.idAt(applied.childAt(applied.rootIndex(), applied.childCount(applied.rootIndex()) - 1)));
+    }
+
+    @Test
+    void buildsEmptyTree() {
+        CategoryTree empty = CategoryTree.builder().build();
+
+        assertEquals(0, empty.size());
+        assertNull(empty.getRoot());
+        assertNull(empty.findByName("root"));
+        assertEquals(CategoryTree.NO_INDEX, empty.rootIndex());
+    }
+
+    private static List<CategoryNode> children(CategoryTree tree, Long id) {
+        int index = tree.indexOf(id);
+        List<CategoryNode> children = new ArrayList<>();
+        for (int position = 0; position < tree.childCount(index); position++) {
+            children.add(tree.nodeAt(tree.childAt(index, position)));
+        }
+        return children;
+    }
+
+    private static List<Long> subtreeIds(CategoryTree tree, Long id) {
+        List<Long> ids = new ArrayList<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(tree.indexOf(id));
+        while (!stack.isEmpty()) {
+            int index = stack.pop();
+            ids.add(tree.idAt(index));
+            for (int position = tree.childCount(index) - 1; position >= 0; position--) {
+                stack.push(tree.childAt(index, position));
+            }
+        }
+        return ids;
+    }
+}
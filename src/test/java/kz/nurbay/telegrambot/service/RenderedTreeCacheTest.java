@@ -0,0 +1,36 @@
+package kz.nurbay.telegrambot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RenderedTreeCacheTest {
+
+    private final RenderedTreeCache cache = new RenderedTreeCache(1_000, Duration.ofHours(1));
+
+    @Test
+    void returnsClosestKnownPageStart() {
+        cache.putPage(1L, 3, 0, 10L, 20L, "page 0");
+        cache.putPage(1L, 3, 1, 20L, 30L, "page 1");
+
+        assertEquals(new RenderedTreeCache.PageStart(1, 20L), cache.getPageStart(1L, 3, 1));
+        assertEquals(new RenderedTreeCache.PageStart(2, 30L), cache.getPageStart(1L, 3, 5));
+        assertEquals("page 1", cache.getPage(1L, 3, 1).text());
+        assertNull(cache.getPage(1L, 3, 2));
+    }
+
+    @Test
+    void discardsPagesOfOlderVersion() {
+        cache.putPage(1L, 3, 0, 10L, null, "old");
+        cache.putPage(1L, 4, 0, 11L, null, "new");
+        cache.putPage(1L, 3, 0, 10L, null, "old");
+
+        assertNull(cache.getPage(1L, 3, 0));
+        assertNull(cache.getPageStart(1L, 3, 0));
+        assertEquals("new", cache.getPage(1L, 4, 0).text());
+        assertEquals(new RenderedTreeCache.PageStart(0, 11L), cache.getPageStart(1L, 4, 0));
+    }
+}
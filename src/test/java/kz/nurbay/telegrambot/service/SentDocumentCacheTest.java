@@ -0,0 +1,37 @@
+package kz.nurbay.telegrambot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SentDocumentCacheTest {
+
+    private final SentDocumentCache cache = new SentDocumentCache(100, Duration.ofHours(1));
+
+    @Test
+    void returnsFileIdOnlyForSameVersionAndFormat() {
+        cache.put(1L, ExportFormat.XLSX, 3, "file-3");
+
+        assertEquals("file-3", cache.getFileId(1L, ExportFormat.XLSX, 3));
+        assertNull(cache.getFileId(1L, ExportFormat.XLSX, 4));
+        assertNull(cache.getFileId(1L, ExportFormat.CSV, 3));
+        assertNull(cache.getFileId(2L, ExportFormat.XLSX, 3));
+    }
+
+    @Test
+    void ignoresFileOfOlderVersion() {
+        cache.put(1L, ExportFormat.XLSX, 5, "file-5");
+        cache.put(1L, ExportFormat.XLSX, 4, "file-4");
+
+        assertEquals("file-5", cache.getFileId(1L, ExportFormat.XLSX, 5));
+
+        cache.put(1L, ExportFormat.XLSX, 6, "file-6");
+        assertEquals("file-6", cache.getFileId(1L, ExportFormat.XLSX, 6));
+
+        cache.invalidate(1L, ExportFormat.XLSX);
+        assertNull(cache.getFileId(1L, ExportFormat.XLSX, 6));
+    }
+}
@@ -0,0 +1,61 @@
+package kz.nurbay.telegrambot.service;
+
+import kz.nurbay.telegrambot.model.User;
+import kz.nurbay.telegrambot.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+class UserServiceTest {
+
+    private static final Long USER_ID = 42L;
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final UserService userService = new UserService(userRepository, 100);
+
+    @Test
+    void registersUserOnlyOnce() {
+        userService.createUserIfNotExists(USER_ID);
+        userService.createUserIfNotExists(USER_ID);
+
+        verify(userRepository, times(1)).insertIfNotExists(USER_ID);
+        verifyNoMoreInteractions(userRepository);
+    }
+
+    @Test
+    void returnsReferenceWithoutQueryingKnownUser() {
+        User reference = new User();
+        when(userRepository.getReferenceById(USER_ID)).thenReturn(reference);
+        userService.createUserIfNotExists(USER_ID);
+
+        assertSame(reference, userService.getReference(USER_ID));
+        assertSame(reference, userService.getReference(USER_ID));
+
+        verify(userRepository).insertIfNotExists(USER_ID);
+        verify(userRepository, times(2)).getReferenceById(USER_ID);
+        verifyNoMoreInteractions(userRepository);
+    }
+
+    @Test
+    void checksExistenceOfUnknownUserOnce() {
+        when(userRepository.existsById(USER_ID)).thenReturn(true);
+
+        userService.getReference(USER_ID);
+        userService.getReference(USER_ID);
+
+        verify(userRepository, times(1)).existsById(USER_ID);
+    }
+
+    @Test
+    void rejectsUserThatDoesNotExist() {
+        when(userRepository.existsById(USER_ID)).thenReturn(false);
+
+        assertThrows(RuntimeException.class, () -> userService.getReference(USER_ID));
+    }
+}